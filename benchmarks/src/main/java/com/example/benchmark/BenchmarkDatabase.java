@@ -0,0 +1,51 @@
+package com.example.benchmark;
+
+import com.example.dao.UserDao;
+import com.example.entity.User;
+import com.example.util.HibernateUtil;
+
+import java.util.stream.LongStream;
+
+/**
+ * Поднимает HibernateUtil на встроенной H2 (режим совместимости с PostgreSQL)
+ * и заполняет таблицу users заданным числом строк.
+ */
+final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    static void start(boolean secondLevelCache) {
+        System.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        System.setProperty("hibernate.connection.url", "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        System.setProperty("hibernate.connection.username", "sa");
+        System.setProperty("hibernate.connection.password", "");
+        System.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        System.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        System.setProperty("hibernate.show_sql", "false");
+        System.setProperty("hibernate.format_sql", "false");
+        System.setProperty("hibernate.cache.use_second_level_cache", String.valueOf(secondLevelCache));
+        HibernateUtil.resetSessionFactory();
+        HibernateUtil.getSessionFactory();
+    }
+
+    static void seed(UserDao userDao, int tableSize) {
+        userDao.saveAll(LongStream.range(0, tableSize).mapToObj(BenchmarkDatabase::user));
+    }
+
+    static User user(long n) {
+        return User.builder()
+                .name("User " + n)
+                .email(email(n))
+                .age((int) (18 + n % 60))
+                .build();
+    }
+
+    static String email(long n) {
+        return "user" + n + "@bench.example.com";
+    }
+
+    static void stop() {
+        HibernateUtil.resetSessionFactory();
+    }
+}
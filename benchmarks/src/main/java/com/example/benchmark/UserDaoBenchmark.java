@@ -0,0 +1,101 @@
+package com.example.benchmark;
+
+import com.example.dao.UserDao;
+import com.example.dao.UserDaoImpl;
+import com.example.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Горячие пути UserDaoImpl на таблицах разного размера.
+ * Число потоков задается ключом JMH -t (например, -t 1, -t 8, -t 32).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-prod.xml")
+public class UserDaoBenchmark {
+
+    private static final int BULK_SIZE = 1_000;
+
+    @Param({"1000", "100000"})
+    private int tableSize;
+
+    @Param({"true", "false"})
+    private boolean secondLevelCache;
+
+    private UserDao userDao;
+    private AtomicLong nextInsert;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.start(secondLevelCache);
+        userDao = new UserDaoImpl();
+        BenchmarkDatabase.seed(userDao, tableSize);
+        nextInsert = new AtomicLong(tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.stop();
+    }
+
+    @Benchmark
+    public Optional<User> findById() {
+        // Id выдаются последовательностью с 1
+        return userDao.findById(ThreadLocalRandom.current().nextLong(1, tableSize + 1));
+    }
+
+    @Benchmark
+    public Optional<User> findByEmail() {
+        return userDao.findByEmail(BenchmarkDatabase.email(ThreadLocalRandom.current().nextInt(tableSize)));
+    }
+
+    @Benchmark
+    public User save() {
+        return userDao.save(BenchmarkDatabase.user(nextInsert.getAndIncrement()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long saveAll() {
+        long from = nextInsert.getAndAdd(BULK_SIZE);
+        return userDao.saveAll(LongStream.range(from, from + BULK_SIZE).mapToObj(BenchmarkDatabase::user));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<User> findAll() {
+        return userDao.findAll();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void streamAll(Blackhole blackhole) {
+        try (Stream<User> users = userDao.streamAll()) {
+            users.forEach(blackhole::consume);
+        }
+    }
+}
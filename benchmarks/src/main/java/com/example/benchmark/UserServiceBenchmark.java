@@ -0,0 +1,59 @@
+package com.example.benchmark;
+
+import com.example.dao.UserDaoImpl;
+import com.example.entity.User;
+import com.example.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserService.createUser: проверка email и вставка в одной единице работы.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-prod.xml")
+public class UserServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int tableSize;
+
+    private UserService userService;
+    private AtomicLong nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.start(true);
+        UserDaoImpl userDao = new UserDaoImpl();
+        BenchmarkDatabase.seed(userDao, tableSize);
+        userService = new UserService(userDao);
+        nextUser = new AtomicLong(tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.stop();
+    }
+
+    @Benchmark
+    public User createUser() {
+        long n = nextUser.getAndIncrement();
+        return userService.createUser("User " + n, BenchmarkDatabase.email(n), 30);
+    }
+}
@@ -1,12 +1,21 @@
 package com.example;
 
+import com.example.dao.UserDaoImpl;
 import com.example.entity.User;
+import com.example.export.ExportFormat;
+import com.example.export.UserExporter;
+import com.example.importer.UserImporter;
 import com.example.service.UserService;
+import com.example.util.AppMetrics;
 import com.example.util.HibernateUtil;
+import com.example.util.SchemaMigration;
 import lombok.extern.log4j.Log4j2;
 
-import java.util.List;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 @Log4j2
 public class Main {
@@ -15,7 +24,28 @@ public class Main {
     private static final Scanner scanner = new Scanner(System.in);
 
     public static void main(String[] args) {
+        // Ночная выгрузка: java ... com.example.Main export users.csv [csv|ndjson]
+        if (args.length >= 2 && "export".equals(args[0])) {
+            export(Path.of(args[1]), args.length > 2 ? args[2] : "csv");
+            return;
+        }
+        // Загрузка из CSV: java ... com.example.Main import users.csv
+        if (args.length >= 2 && "import".equals(args[0])) {
+            importCsv(Path.of(args[1]));
+            return;
+        }
+
+        // Миграции схемы перед развертыванием: java ... com.example.Main migrate
+        if (args.length >= 1 && "migrate".equals(args[0])) {
+            SchemaMigration.migrate();
+            return;
+        }
+
         log.info("Starting Hibernate CRUD application");
+        // Фабрика, пул и планы запросов готовятся в фоне, пока выводится меню
+        HibernateUtil.initAsync()
+                .thenRun(() -> new UserDaoImpl().warmUp())
+                .whenComplete((ignored, error) -> logStartup(error));
 
         try {
             boolean running = true;
@@ -57,6 +87,32 @@ public class Main {
         }
     }
 
+    private static void export(Path target, String format) {
+        try {
+            new UserExporter().export(target, ExportFormat.valueOf(format.toUpperCase(Locale.ROOT)));
+        } finally {
+            HibernateUtil.shutdown();
+        }
+    }
+
+    private static void importCsv(Path source) {
+        try {
+            new UserImporter().importCsv(source);
+        } finally {
+            HibernateUtil.shutdown();
+        }
+    }
+
+    private static void logStartup(Throwable error) {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (error != null) {
+            log.error("Ошибка подготовки к работе через {} мс после запуска: {}", uptime, error.getMessage(), error);
+        } else {
+            AppMetrics.registry().timer("app.startup").record(uptime, TimeUnit.MILLISECONDS);
+            log.info("Приложение готово к работе через {} мс после запуска JVM", uptime);
+        }
+    }
+
     private static void printMenu() {
         System.out.println("\n=== CRUD User Management Application ===");
         System.out.println("1. Create user");
@@ -103,16 +159,18 @@ public class Main {
 
     private static void getAllUsers() {
         try {
-            List<User> users = userService.getAllUsers();
-            if (users.isEmpty()) {
-                System.out.println("No users found");
-            } else {
-                System.out.println("User list:");
-                for (User user : users) {
-                    System.out.printf("- ID=%d, Name=%s, Email=%s, Age=%d, Created=%s%n",
-                            user.getId(), user.getName(), user.getEmail(), user.getAge(),
-                            user.getCreatedAt());
+            // Печатаем по мере чтения курсором, не собирая всю таблицу в память
+            long[] printed = {0};
+            userService.forEachUser(user -> {
+                if (printed[0]++ == 0) {
+                    System.out.println("User list:");
                 }
+                System.out.printf("- ID=%d, Name=%s, Email=%s, Age=%d, Created=%s%n",
+                        user.getId(), user.getName(), user.getEmail(), user.getAge(),
+                        user.getCreatedAt());
+            });
+            if (printed[0] == 0) {
+                System.out.println("No users found");
             }
         } catch (Exception e) {
             System.out.println("Error: " + e.
@@ -146,8 +204,11 @@ public class Main {
             System.out.print("Enter user ID to delete: ");
             long id = Long.parseLong(scanner.nextLine());
 
-            userService.deleteUser(id);
-            System.out.println("User deleted");
+            if (userService.deleteUser(id)) {
+                System.out.println("User deleted");
+            } else {
+                System.out.println("User not found");
+            }
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
         }
@@ -0,0 +1,8 @@
+package com.example.dao;
+
+/**
+ * Число пользователей с возрастом из полуинтервала [fromAge, toAge).
+ * У пользователей без возраста своя корзина, в ней fromAge и toAge равны null.
+ */
+public record AgeBucket(Integer fromAge, Integer toAge, long count) {
+}
@@ -0,0 +1,284 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import com.example.util.TransactionTemplate;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Read-through кэш поверх другого UserDao: findById, findAllByIds и findByEmail при попадании
+ * не открывают сессию Hibernate. Записи вытесняются по размеру (W-TinyLFU) и по TTL,
+ * изменения через этот DAO сбрасывают затронутые записи.
+ */
+@Log4j2
+public class CachingUserDao implements UserDao {
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    private static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    private final UserDao delegate;
+    private final Cache<Long, User> usersById;
+    private final Cache<String, Long> idsByEmail;
+
+    public CachingUserDao(UserDao delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL);
+    }
+
+    public CachingUserDao(UserDao delegate, long maximumSize, Duration ttl) {
+        this.delegate = delegate;
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.idsByEmail = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public User save(User user) {
+        User saved = delegate.save(user);
+        idsByEmail.invalidate(saved.getEmail());
+        return saved;
+    }
+
+    @Override
+    public long saveAll(Iterable<User> users) {
+        return delegate.saveAll(users);
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        User user = usersById.get(id, key -> delegate.findById(key).orElse(null));
+        return Optional.ofNullable(user).map(CachingUserDao::copy);
+    }
+
+    @Override
+    public User upsertByEmail(User user) {
+        User upserted = delegate.upsertByEmail(user);
+        invalidate(upserted.getId());
+        idsByEmail.invalidate(upserted.getEmail());
+        return upserted;
+    }
+
+    @Override
+    public long upsertAll(Iterable<User> users) {
+        long sent = delegate.upsertAll(users);
+        // id затронутых записей неизвестны
+        usersById.invalidateAll();
+        idsByEmail.invalidateAll();
+        return sent;
+    }
+
+    @Override
+    public UserLookup<Long> findAllByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty() || ids.stream().anyMatch(Objects::isNull)) {
+            return delegate.findAllByIds(ids);
+        }
+        // Из БД одной пачкой догружаются только id, которых нет в кэше
+        Map<Long, User> cached = usersById.getAll(ids, missing -> {
+            Map<Long, User> loaded = new HashMap<>();
+            for (User user : delegate.findAllByIds(Set.copyOf(missing)).found()) {
+                loaded.put(user.getId(), copy(user));
+            }
+            return loaded;
+        });
+        Map<Long, User> users = new HashMap<>(cached.size());
+        cached.forEach((id, user) -> users.put(id, copy(user)));
+        return UserLookup.of(ids.stream().distinct().toList(), users);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public Stream<User> streamRange(IdRange range) {
+        return delegate.streamRange(range);
+    }
+
+    @Override
+    public Optional<IdRange> findIdRange() {
+        return delegate.findIdRange();
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public UserPage findPageByCreatedAt(String cursor, int limit) {
+        return delegate.findPageByCreatedAt(cursor, limit);
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return delegate.findAllSummaries();
+    }
+
+    @Override
+    public List<UserSummary> findSummaryPage(Long afterId, int limit) {
+        return delegate.findSummaryPage(afterId, limit);
+    }
+
+    @Override
+    public User update(User user) {
+        // При конфликте версий кэшированная копия тоже устарела: повтор должен перечитать БД
+        try {
+            return delegate.update(user);
+        } finally {
+            invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public int updateById(Long id, String name, String email, Integer age) {
+        int updated = delegate.updateById(id, name, email, age);
+        invalidate(id);
+        return updated;
+    }
+
+    @Override
+    public int updateAll(Collection<UserUpdate> updates) {
+        int updated = delegate.updateAll(updates);
+        updates.forEach(update -> invalidate(update.id()));
+        return updated;
+    }
+
+    @Override
+    public void delete(Long id) {
+        delegate.delete(id);
+        invalidate(id);
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        int deleted = delegate.deleteById(id);
+        invalidate(id);
+        return deleted;
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        Long id = idsByEmail.get(email, this::loadIdByEmail);
+        if (id == null) {
+            return Optional.empty();
+        }
+        User user = usersById.getIfPresent(id);
+        if (user != null && email.equals(user.getEmail())) {
+            return Optional.of(copy(user));
+        }
+        // Запись вытеснена или email у пользователя сменился - идем в БД заново
+        idsByEmail.invalidate(email);
+        return Optional.ofNullable(idsByEmail.get(email, this::loadIdByEmail))
+                .map(usersById::getIfPresent)
+                .map(CachingUserDao::copy);
+    }
+
+    @Override
+    public UserLookup<String> findAllByEmails(Collection<String> emails) {
+        UserLookup<String> lookup = delegate.findAllByEmails(emails);
+        for (User user : lookup.found()) {
+            usersById.put(user.getId(), copy(user));
+            idsByEmail.put(user.getEmail(), user.getId());
+        }
+        return lookup;
+    }
+
+    // Результаты поиска зависят от всей таблицы и не кэшируются
+    @Override
+    public List<UserSearchHit> search(String query, int limit) {
+        return delegate.search(query, limit);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public List<AgeBucket> countByAgeBucket(int width) {
+        return delegate.countByAgeBucket(width);
+    }
+
+    @Override
+    public List<DailySignups> signupsPerDay(LocalDate from, LocalDate to) {
+        return delegate.signupsPerDay(from, to);
+    }
+
+    @Override
+    public TransactionTemplate transactionTemplate() {
+        return delegate.transactionTemplate();
+    }
+
+    public CacheStats getIdCacheStats() {
+        return usersById.stats();
+    }
+
+    public CacheStats getEmailCacheStats() {
+        return idsByEmail.stats();
+    }
+
+    public void logStats() {
+        CacheStats byId = usersById.stats();
+        CacheStats byEmail = idsByEmail.stats();
+        log.info("Кэш пользователей по ID: попадания {}%, средняя загрузка {} мкс, вытеснено {}",
+                String.format("%.1f", byId.hitRate() * 100), (long) byId.averageLoadPenalty() / 1000,
+                byId.evictionCount());
+        log.info("Кэш пользователей по email: попадания {}%, средняя загрузка {} мкс, вытеснено {}",
+                String.format("%.1f", byEmail.hitRate() * 100), (long) byEmail.averageLoadPenalty() / 1000,
+                byEmail.evictionCount());
+    }
+
+    private Long loadIdByEmail(String email) {
+        return delegate.findByEmail(email)
+                .map(user -> {
+                    usersById.put(user.getId(), copy(user));
+                    return user.getId();
+                })
+                .orElse(null);
+    }
+
+    private void invalidate(Long id) {
+        User cached = usersById.getIfPresent(id);
+        usersById.invalidate(id);
+        if (cached != null) {
+            idsByEmail.invalidate(cached.getEmail());
+        }
+    }
+
+    // В кэше и у вызывающего кода разные экземпляры: изменения объекта снаружи не портят кэш
+    private static User copy(User user) {
+        return User.builder()
+                .id(user.getId())
+                .name(user.getName())
+                .email(user.getEmail())
+                .age(user.getAge())
+                .createdAt(user.getCreatedAt())
+                .version(user.getVersion())
+                .build();
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import com.example.util.TransactionTemplate;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Счетчики пользователей в памяти поверх другого UserDao: count() и countByAgeBucket(ageBucketWidth)
+ * отвечают из снимков, не обращаясь к БД. Каждый снимок загружается одним запросом при первом чтении,
+ * дальше записи меняют его по собственному результату, без дополнительных чтений: save добавляет
+ * пользователя в общий счетчик и в корзину его возраста, saveAll и deleteById меняют общий счетчик
+ * на число затронутых строк. Если результат записи не говорит, как изменились счетчики (upsert,
+ * смена или удаление пользователя с неизвестным возрастом), затронутый снимок сбрасывается
+ * до следующего чтения. Изменения мимо этого DAO (другие экземпляры приложения, SQL) и записи,
+ * шедшие параллельно с загрузкой, учитываются при перезагрузке раз в refreshInterval.
+ * Внутри единицы работы TransactionTemplate снимки меняются только после фиксации транзакции,
+ * при откате они остаются прежними.
+ * Остальные запросы идут в delegate.
+ */
+@Log4j2
+public class CountingUserDao implements UserDao {
+
+    private static final int DEFAULT_AGE_BUCKET_WIDTH = 10;
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(1);
+
+    // Ключ корзины пользователей без возраста
+    private static final int NO_AGE = Integer.MIN_VALUE;
+
+    private final UserDao delegate;
+    private final int ageBucketWidth;
+    private final long refreshNanos;
+    private final LongSupplier nanoClock;
+    private final Refreshing<Total> total;
+    private final Refreshing<AgeBuckets> ageBuckets;
+
+    public CountingUserDao(UserDao delegate) {
+        this(delegate, DEFAULT_AGE_BUCKET_WIDTH, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    public CountingUserDao(UserDao delegate, int ageBucketWidth, Duration refreshInterval) {
+        this(delegate, ageBucketWidth, refreshInterval, System::nanoTime);
+    }
+
+    CountingUserDao(UserDao delegate, int ageBucketWidth, Duration refreshInterval, LongSupplier nanoClock) {
+        if (ageBucketWidth <= 0) {
+            throw new IllegalArgumentException("Ширина корзины возраста должна быть положительной: " + ageBucketWidth);
+        }
+        this.delegate = delegate;
+        this.ageBucketWidth = ageBucketWidth;
+        this.refreshNanos = refreshInterval.toNanos();
+        this.nanoClock = nanoClock;
+        this.total = new Refreshing<>(this::loadTotal);
+        this.ageBuckets = new Refreshing<>(this::loadAgeBuckets);
+    }
+
+    @Override
+    public long count() {
+        return total.get().count.sum();
+    }
+
+    @Override
+    public List<AgeBucket> countByAgeBucket(int width) {
+        if (width != ageBucketWidth) {
+            return delegate.countByAgeBucket(width);
+        }
+        Map<Integer, Long> counts = new TreeMap<>(Comparator.comparing((Integer key) -> key == NO_AGE)
+                .thenComparing(Comparator.naturalOrder()));
+        ageBuckets.get().byAge.forEach((key, count) -> {
+            long sum = count.sum();
+            if (sum > 0) {
+                counts.put(key, sum);
+            }
+        });
+        List<AgeBucket> buckets = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> buckets.add(key == NO_AGE
+                ? new AgeBucket(null, null, count)
+                : new AgeBucket(key, key + width, count)));
+        return buckets;
+    }
+
+    @Override
+    public List<DailySignups> signupsPerDay(LocalDate from, LocalDate to) {
+        return delegate.signupsPerDay(from, to);
+    }
+
+    @Override
+    public TransactionTemplate transactionTemplate() {
+        return delegate.transactionTemplate();
+    }
+
+    @Override
+    public User save(User user) {
+        User saved = delegate.save(user);
+        int bucket = bucketOf(saved.getAge());
+        afterCommit(() -> {
+            addToTotal(1);
+            AgeBuckets buckets = ageBuckets.loaded();
+            if (buckets != null) {
+                buckets.add(bucket, 1);
+            }
+        });
+        return saved;
+    }
+
+    @Override
+    public long saveAll(Iterable<User> users) {
+        // Источник может быть одноразовым (поток), поэтому возрасты не перечитываются
+        long saved;
+        try {
+            saved = delegate.saveAll(users);
+        } catch (RuntimeException e) {
+            // Пакеты шардов атомарны только по отдельности: часть записей могла сохраниться
+            afterCommit(this::invalidate);
+            throw e;
+        }
+        afterCommit(() -> {
+            addToTotal(saved);
+            ageBuckets.invalidate();
+        });
+        return saved;
+    }
+
+    @Override
+    public User upsertByEmail(User user) {
+        User upserted = delegate.upsertByEmail(user);
+        afterCommit(this::invalidate);
+        return upserted;
+    }
+
+    @Override
+    public long upsertAll(Iterable<User> users) {
+        long sent = delegate.upsertAll(users);
+        afterCommit(this::invalidate);
+        return sent;
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public UserLookup<Long> findAllByIds(Collection<Long> ids) {
+        return delegate.findAllByIds(ids);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public Stream<User> streamRange(IdRange range) {
+        return delegate.streamRange(range);
+    }
+
+    @Override
+    public Optional<IdRange> findIdRange() {
+        return delegate.findIdRange();
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public UserPage findPageByCreatedAt(String cursor, int limit) {
+        return delegate.findPageByCreatedAt(cursor, limit);
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return delegate.findAllSummaries();
+    }
+
+    @Override
+    public List<UserSummary> findSummaryPage(Long afterId, int limit) {
+        return delegate.findSummaryPage(afterId, limit);
+    }
+
+    @Override
+    public User update(User user) {
+        User updated = delegate.update(user);
+        afterCommit(ageBuckets::invalidate);
+        return updated;
+    }
+
+    @Override
+    public int updateById(Long id, String name, String email, Integer age) {
+        int updated = delegate.updateById(id, name, email, age);
+        if (age != null && updated > 0) {
+            afterCommit(ageBuckets::invalidate);
+        }
+        return updated;
+    }
+
+    @Override
+    public int updateAll(Collection<UserUpdate> updates) {
+        int updated = delegate.updateAll(updates);
+        if (updated > 0 && updates.stream().anyMatch(update -> update.age() != null)) {
+            afterCommit(ageBuckets::invalidate);
+        }
+        return updated;
+    }
+
+    @Override
+    public void delete(Long id) {
+        // Число удаленных строк неизвестно
+        delegate.delete(id);
+        afterCommit(this::invalidate);
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        int deleted = delegate.deleteById(id);
+        if (deleted > 0) {
+            afterCommit(() -> {
+                addToTotal(-deleted);
+                ageBuckets.invalidate();
+            });
+        }
+        return deleted;
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return delegate.findByEmail(email);
+    }
+
+    @Override
+    public UserLookup<String> findAllByEmails(Collection<String> emails) {
+        return delegate.findAllByEmails(emails);
+    }
+
+    @Override
+    public List<UserSearchHit> search(String query, int limit) {
+        return delegate.search(query, limit);
+    }
+
+    /**
+     * Сбрасывает снимки: следующее чтение счетчиков загрузит их из БД заново.
+     */
+    public void invalidate() {
+        total.invalidate();
+        ageBuckets.invalidate();
+    }
+
+    private Total loadTotal() {
+        Total loaded = new Total(nanoClock.getAsLong());
+        loaded.count.add(delegate.count());
+        return loaded;
+    }
+
+    private AgeBuckets loadAgeBuckets() {
+        AgeBuckets loaded = new AgeBuckets(nanoClock.getAsLong());
+        for (AgeBucket bucket : delegate.countByAgeBucket(ageBucketWidth)) {
+            loaded.add(bucket.fromAge() != null ? bucket.fromAge() : NO_AGE, bucket.count());
+        }
+        log.debug("Счетчики пользователей по возрасту загружены: {} корзин", loaded.byAge.size());
+        return loaded;
+    }
+
+    // Вне общей транзакции выполняется сразу
+    private void afterCommit(Runnable action) {
+        delegate.transactionTemplate().afterCommit(action);
+    }
+
+    private void addToTotal(long delta) {
+        Total current = total.loaded();
+        if (current != null) {
+            current.count.add(delta);
+        }
+    }
+
+    // Деление с отбрасыванием дробной части, как у age / width в запросе PostgreSQL
+    private int bucketOf(Integer age) {
+        return age != null ? age / ageBucketWidth * ageBucketWidth : NO_AGE;
+    }
+
+    private abstract static class Snapshot {
+
+        final long loadedAt;
+
+        Snapshot(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class Total extends Snapshot {
+
+        private final LongAdder count = new LongAdder();
+
+        Total(long loadedAt) {
+            super(loadedAt);
+        }
+    }
+
+    private static final class AgeBuckets extends Snapshot {
+
+        // Нижняя граница корзины -> число пользователей
+        private final Map<Integer, LongAdder> byAge = new ConcurrentHashMap<>();
+
+        AgeBuckets(long loadedAt) {
+            super(loadedAt);
+        }
+
+        void add(int bucket, long delta) {
+            byAge.computeIfAbsent(bucket, key -> new LongAdder()).add(delta);
+        }
+    }
+
+    // Снимок с ленивой загрузкой, перезагрузкой по возрасту и сбросом
+    private final class Refreshing<S extends Snapshot> {
+
+        private final Supplier<S> loader;
+        private final ReentrantLock loadLock = new ReentrantLock();
+        // Меняется при каждом сбросе: снимок, загрузка которого пересеклась со сбросом, не сохраняется
+        private final AtomicLong invalidations = new AtomicLong();
+        private volatile S snapshot;
+
+        Refreshing(Supplier<S> loader) {
+            this.loader = loader;
+        }
+
+        S get() {
+            S current = snapshot;
+            if (isFresh(current)) {
+                return current;
+            }
+            loadLock.lock();
+            try {
+                current = snapshot;
+                if (isFresh(current)) {
+                    return current;
+                }
+                long version = invalidations.get();
+                S loaded = loader.get();
+                if (invalidations.get() == version) {
+                    snapshot = loaded;
+                }
+                return loaded;
+            } finally {
+                loadLock.unlock();
+            }
+        }
+
+        // Загруженный снимок для поправки записью; null, если его нет
+        S loaded() {
+            return snapshot;
+        }
+
+        void invalidate() {
+            invalidations.incrementAndGet();
+            snapshot = null;
+        }
+
+        private boolean isFresh(S current) {
+            return current != null && nanoClock.getAsLong() - current.loadedAt < refreshNanos;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.dao;
+
+import java.time.LocalDate;
+
+/**
+ * Число пользователей, созданных за день day (по дате createdAt).
+ */
+public record DailySignups(LocalDate day, long count) {
+}
@@ -0,0 +1,34 @@
+package com.example.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Диапазон id пользователей [from, to], обе границы включительно.
+ */
+public record IdRange(long from, long to) {
+
+    public IdRange {
+        if (from > to) {
+            throw new IllegalArgumentException("Неверный диапазон id: " + from + " > " + to);
+        }
+    }
+
+    /**
+     * Делит диапазон на не более чем count смежных частей примерно равной ширины.
+     */
+    public List<IdRange> split(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Количество частей должно быть положительным: " + count);
+        }
+        long width = (to - from) / count + 1;
+        List<IdRange> parts = new ArrayList<>(count);
+        for (long start = from; ; start += width) {
+            long end = Math.min(to, start + width - 1);
+            parts.add(new IdRange(start, end));
+            if (end == to) {
+                return parts;
+            }
+        }
+    }
+}
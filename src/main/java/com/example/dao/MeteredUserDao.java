@@ -0,0 +1,203 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import com.example.util.AppMetrics;
+import com.example.util.TransactionTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Измеряет каждый метод UserDao: таймер user.dao (перцентили p50/p99/p999, число вызовов)
+ * и счетчик ошибок user.dao.errors с тегами method и exception.
+ */
+public class MeteredUserDao implements UserDao {
+
+    private final UserDao delegate;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public MeteredUserDao(UserDao delegate) {
+        this(delegate, AppMetrics.registry());
+    }
+
+    public MeteredUserDao(UserDao delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public User save(User user) {
+        return record("save", () -> delegate.save(user));
+    }
+
+    @Override
+    public long saveAll(Iterable<User> users) {
+        return record("saveAll", () -> delegate.saveAll(users));
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return record("findById", () -> delegate.findById(id));
+    }
+
+    @Override
+    public User upsertByEmail(User user) {
+        return record("upsertByEmail", () -> delegate.upsertByEmail(user));
+    }
+
+    @Override
+    public long upsertAll(Iterable<User> users) {
+        return record("upsertAll", () -> delegate.upsertAll(users));
+    }
+
+    @Override
+    public UserLookup<Long> findAllByIds(Collection<Long> ids) {
+        return record("findAllByIds", () -> delegate.findAllByIds(ids));
+    }
+
+    @Override
+    public List<User> findAll() {
+        return record("findAll", delegate::findAll);
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return record("streamAll", delegate::streamAll);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        record("forEachUser", () -> {
+            delegate.forEachUser(action);
+            return null;
+        });
+    }
+
+    @Override
+    public Stream<User> streamRange(IdRange range) {
+        return record("streamRange", () -> delegate.streamRange(range));
+    }
+
+    @Override
+    public Optional<IdRange> findIdRange() {
+        return record("findIdRange", delegate::findIdRange);
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return record("findPage", () -> delegate.findPage(afterId, limit));
+    }
+
+    @Override
+    public UserPage findPageByCreatedAt(String cursor, int limit) {
+        return record("findPageByCreatedAt", () -> delegate.findPageByCreatedAt(cursor, limit));
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return record("findAllSummaries", delegate::findAllSummaries);
+    }
+
+    @Override
+    public List<UserSummary> findSummaryPage(Long afterId, int limit) {
+        return record("findSummaryPage", () -> delegate.findSummaryPage(afterId, limit));
+    }
+
+    @Override
+    public User update(User user) {
+        return record("update", () -> delegate.update(user));
+    }
+
+    @Override
+    public int updateById(Long id, String name, String email, Integer age) {
+        return record("updateById", () -> delegate.updateById(id, name, email, age));
+    }
+
+    @Override
+    public int updateAll(Collection<UserUpdate> updates) {
+        return record("updateAll", () -> delegate.updateAll(updates));
+    }
+
+    @Override
+    public void delete(Long id) {
+        record("delete", () -> {
+            delegate.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        return record("deleteById", () -> delegate.deleteById(id));
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return record("findByEmail", () -> delegate.findByEmail(email));
+    }
+
+    @Override
+    public UserLookup<String> findAllByEmails(Collection<String> emails) {
+        return record("findAllByEmails", () -> delegate.findAllByEmails(emails));
+    }
+
+    @Override
+    public List<UserSearchHit> search(String query, int limit) {
+        return record("search", () -> delegate.search(query, limit));
+    }
+
+    @Override
+    public long count() {
+        return record("count", delegate::count);
+    }
+
+    @Override
+    public List<AgeBucket> countByAgeBucket(int width) {
+        return record("countByAgeBucket", () -> delegate.countByAgeBucket(width));
+    }
+
+    @Override
+    public List<DailySignups> signupsPerDay(LocalDate from, LocalDate to) {
+        return record("signupsPerDay", () -> delegate.signupsPerDay(from, to));
+    }
+
+    @Override
+    public TransactionTemplate transactionTemplate() {
+        return delegate.transactionTemplate();
+    }
+
+    private <T> T record(String method, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            Counter.builder("user.dao.errors")
+                    .tag("method", method)
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(registry)
+                    .increment();
+            throw e;
+        } finally {
+            timer(method).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(String method) {
+        return timers.computeIfAbsent(method, name -> AppMetrics.latencyTimer("user.dao")
+                .description("Время выполнения метода UserDao")
+                .tag("method", name)
+                .register(registry));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.dao;
+
+/**
+ * Пользователь изменен или удален другой транзакцией после того, как был прочитан:
+ * версия в БД не совпала с версией обновляемого объекта. Обновление не применено;
+ * его можно повторить, перечитав пользователя.
+ */
+public class OptimisticLockConflictException extends RuntimeException {
+
+    private final Long userId;
+    private final Long version;
+
+    public OptimisticLockConflictException(Long userId, Long version, Throwable cause) {
+        super("Пользователь ID " + userId + " (версия " + version + ") изменен или удален параллельно", cause);
+        this.userId = userId;
+        this.version = version;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
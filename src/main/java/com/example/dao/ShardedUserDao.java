@@ -0,0 +1,491 @@
+package com.example.dao;
+
+import com.example.entity.ShardedSequenceGenerator;
+import com.example.entity.User;
+import com.example.util.HibernateUtil;
+import com.example.util.TransactionTemplate;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * UserDao поверх нескольких баз (шардов). Пользователь хранится на шарде hash(email) mod N,
+ * а генератор id (ShardedSequenceGenerator) записывает номер шарда в младшие биты id, поэтому
+ * операции по id и по email идут на один шард без справочника. Запросы без ключа (findAll,
+ * страницы, сводки, выгрузка) выполняются на всех шардах параллельно, и результаты сливаются
+ * в том же порядке сортировки, что и у одной базы.
+ * Общей транзакции между шардами нет: пакетные операции атомарны только в пределах шарда.
+ * Смена email, при которой пользователь попал бы на другой шард, отклоняется.
+ */
+@Log4j2
+public class ShardedUserDao implements UserDao, AutoCloseable {
+
+    // Сколько записей пакетной операции копится для одного шарда перед отправкой
+    private static final int BATCH_CHUNK_SIZE = 1000;
+
+    // Потоков на шард, если размер пула соединений шарда не передан
+    private static final int DEFAULT_THREADS_PER_SHARD = 10;
+
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private static final Comparator<User> BY_ID = Comparator.comparing(User::getId);
+
+    // Порядок findPageByCreatedAt: как ORDER BY created_at DESC, id DESC в PostgreSQL (NULL первыми)
+    private static final Comparator<User> BY_CREATED_AT_DESC = Comparator
+            .comparing(User::getCreatedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>reverseOrder()))
+            .thenComparing(User::getId, Comparator.reverseOrder());
+
+    private static final Comparator<UserSearchHit> BY_SCORE = Comparator
+            .comparingDouble(UserSearchHit::score).reversed()
+            .thenComparing(hit -> hit.user().getId());
+
+    private final List<UserDao> shards;
+    private final ExecutorService executor;
+
+    public ShardedUserDao() {
+        this(HibernateUtil.getShardSessionFactories().stream().<UserDao>map(UserDaoImpl::new).toList(),
+                HibernateUtil.getShardSessionFactories().stream()
+                        .mapToInt(HibernateUtil::getConnectionPoolSize).max().orElse(DEFAULT_THREADS_PER_SHARD));
+    }
+
+    public ShardedUserDao(List<UserDao> shards) {
+        this(shards, DEFAULT_THREADS_PER_SHARD);
+    }
+
+    /**
+     * Номер шарда - позиция в списке; он же закодирован в id, созданных на этом шарде.
+     * Запросы ко всем шардам выполняются в общем пуле из threadsPerShard потоков на шард
+     * (обычно - размер пула соединений шарда): параллельные запросы разных вызывающих
+     * не ждут друг друга, пока на шардах есть свободные соединения. Простаивающие потоки завершаются.
+     */
+    public ShardedUserDao(List<UserDao> shards, int threadsPerShard) {
+        if (shards.isEmpty() || shards.size() > ShardedSequenceGenerator.MAX_SHARDS) {
+            throw new IllegalArgumentException("Количество шардов должно быть от 1 до "
+                    + ShardedSequenceGenerator.MAX_SHARDS + ": " + shards.size());
+        }
+        if (threadsPerShard < 1) {
+            throw new IllegalArgumentException("Количество потоков на шард должно быть положительным: " + threadsPerShard);
+        }
+        this.shards = List.copyOf(shards);
+        AtomicInteger threads = new AtomicInteger();
+        int poolSize = shards.size() * threadsPerShard;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "user-shard-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public User save(User user) {
+        return shards.get(shardOf(user.getEmail())).save(user);
+    }
+
+    @Override
+    public long saveAll(Iterable<User> users) {
+        return chunked(users, UserDao::saveAll);
+    }
+
+    @Override
+    public User upsertByEmail(User user) {
+        return shards.get(shardOf(user.getEmail())).upsertByEmail(user);
+    }
+
+    @Override
+    public long upsertAll(Iterable<User> users) {
+        return chunked(users, UserDao::upsertAll);
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return shardOf(id).flatMap(shard -> shards.get(shard).findById(id));
+    }
+
+    @Override
+    public UserLookup<Long> findAllByIds(Collection<Long> ids) {
+        List<Long> keys = distinctKeys(ids);
+        Map<Integer, List<Long>> byShard = new TreeMap<>();
+        for (Long id : keys) {
+            // id чужого формата не может существовать ни на одном шарде и попадет в missing
+            shardOf(id).ifPresent(shard -> byShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(id));
+        }
+        Map<Long, User> found = new HashMap<>();
+        for (UserLookup<Long> lookup : scatter(byShard, UserDao::findAllByIds)) {
+            lookup.found().forEach(user -> found.put(user.getId(), user));
+        }
+        return UserLookup.of(keys, found);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return mergeLists(scatterAll(UserDao::findAll), BY_ID, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return mergeStreams(UserDao::streamAll);
+    }
+
+    @Override
+    public Stream<User> streamRange(IdRange range) {
+        return mergeStreams(shard -> shard.streamRange(range));
+    }
+
+    @Override
+    public Optional<IdRange> findIdRange() {
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        boolean empty = true;
+        for (Optional<IdRange> range : scatterAll(UserDao::findIdRange)) {
+            if (range.isPresent()) {
+                from = Math.min(from, range.get().from());
+                to = Math.max(to, range.get().to());
+                empty = false;
+            }
+        }
+        return empty ? Optional.empty() : Optional.of(new IdRange(from, to));
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        // Каждый шард отдает свои первые limit записей - среди них все записи общей страницы
+        return mergeLists(scatterAll(shard -> shard.findPage(afterId, limit)), BY_ID, limit);
+    }
+
+    @Override
+    public UserPage findPageByCreatedAt(String cursor, int limit) {
+        List<UserPage> pages = scatterAll(shard -> shard.findPageByCreatedAt(cursor, limit));
+        List<List<User>> users = new ArrayList<>(pages.size());
+        boolean hasNext = false;
+        int total = 0;
+        for (UserPage page : pages) {
+            users.add(page.users());
+            hasNext |= page.hasNext();
+            total += page.users().size();
+        }
+        List<User> page = mergeLists(users, BY_CREATED_AT_DESC, limit);
+        if (!hasNext && total <= limit) {
+            return new UserPage(page, null);
+        }
+        User last = page.get(page.size() - 1);
+        return new UserPage(page, new CreatedAtCursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return mergeLists(scatterAll(UserDao::findAllSummaries), Comparator.comparing(UserSummary::id), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<UserSummary> findSummaryPage(Long afterId, int limit) {
+        return mergeLists(scatterAll(shard -> shard.findSummaryPage(afterId, limit)),
+                Comparator.comparing(UserSummary::id), limit);
+    }
+
+    @Override
+    public User update(User user) {
+        int shard = shardOf(user.getId()).orElseThrow(() -> new IllegalArgumentException(
+                "Id " + user.getId() + " не относится ни к одному из " + shards.size() + " шардов"));
+        checkSameShard(user.getId(), shard, user.getEmail());
+        return shards.get(shard).update(user);
+    }
+
+    @Override
+    public int updateById(Long id, String name, String email, Integer age) {
+        Optional<Integer> shard = shardOf(id);
+        if (shard.isEmpty()) {
+            return 0;
+        }
+        checkSameShard(id, shard.get(), email);
+        return shards.get(shard.get()).updateById(id, name, email, age);
+    }
+
+    @Override
+    public int updateAll(Collection<UserUpdate> updates) {
+        Map<Integer, List<UserUpdate>> byShard = new TreeMap<>();
+        for (UserUpdate update : updates) {
+            Optional<Integer> shard = shardOf(update.id());
+            if (shard.isPresent()) {
+                checkSameShard(update.id(), shard.get(), update.email());
+                byShard.computeIfAbsent(shard.get(), s -> new ArrayList<>()).add(update);
+            }
+        }
+        return scatter(byShard, UserDao::updateAll).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public void delete(Long id) {
+        shardOf(id).ifPresent(shard -> shards.get(shard).delete(id));
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        return shardOf(id).map(shard -> shards.get(shard).deleteById(id)).orElse(0);
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return shards.get(shardOf(email)).findByEmail(email);
+    }
+
+    @Override
+    public UserLookup<String> findAllByEmails(Collection<String> emails) {
+        List<String> keys = distinctKeys(emails);
+        Map<Integer, List<String>> byShard = new TreeMap<>();
+        for (String email : keys) {
+            byShard.computeIfAbsent(shardOf(email), s -> new ArrayList<>()).add(email);
+        }
+        Map<String, User> found = new HashMap<>();
+        for (UserLookup<String> lookup : scatter(byShard, UserDao::findAllByEmails)) {
+            lookup.found().forEach(user -> found.put(user.getEmail(), user));
+        }
+        return UserLookup.of(keys, found);
+    }
+
+    @Override
+    public List<UserSearchHit> search(String query, int limit) {
+        return mergeLists(scatterAll(shard -> shard.search(query, limit)), BY_SCORE, limit);
+    }
+
+    @Override
+    public long count() {
+        return scatterAll(UserDao::count).stream().mapToLong(Long::longValue).sum();
+    }
+
+    // Корзины шардов с одинаковыми границами складываются; порядок - как у одной базы
+    @Override
+    public List<AgeBucket> countByAgeBucket(int width) {
+        Map<Integer, Long> counts = new TreeMap<>(Comparator.nullsLast(Comparator.naturalOrder()));
+        for (List<AgeBucket> buckets : scatterAll(shard -> shard.countByAgeBucket(width))) {
+            buckets.forEach(bucket -> counts.merge(bucket.fromAge(), bucket.count(), Long::sum));
+        }
+        List<AgeBucket> merged = new ArrayList<>(counts.size());
+        counts.forEach((from, count) -> merged.add(new AgeBucket(from, from != null ? from + width : null, count)));
+        return merged;
+    }
+
+    // Общей транзакции между шардами нет: каждый вызов идет в своей транзакции на своем шарде
+    @Override
+    public TransactionTemplate transactionTemplate() {
+        return TransactionTemplate.none();
+    }
+
+    // Каждый шард возвращает все дни диапазона в одном порядке, поэтому счетчики складываются по позиции
+    @Override
+    public List<DailySignups> signupsPerDay(LocalDate from, LocalDate to) {
+        List<List<DailySignups>> perShard = scatterAll(shard -> shard.signupsPerDay(from, to));
+        List<DailySignups> merged = new ArrayList<>(perShard.get(0));
+        for (List<DailySignups> days : perShard.subList(1, perShard.size())) {
+            for (int i = 0; i < merged.size(); i++) {
+                merged.set(i, new DailySignups(merged.get(i).day(), merged.get(i).count() + days.get(i).count()));
+            }
+        }
+        return merged;
+    }
+
+    // Шард пользователя по email: биты hashCode перемешиваются, как в HashMap, для равномерного распределения
+    int shardOf(String email) {
+        Objects.requireNonNull(email, "Для выбора шарда нужен email пользователя");
+        int hash = email.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.size());
+    }
+
+    // Шард по id; пусто, если закодированного номера шарда нет в конфигурации
+    private Optional<Integer> shardOf(Long id) {
+        Objects.requireNonNull(id, "Для выбора шарда нужен id пользователя");
+        int shard = ShardedSequenceGenerator.shardOf(id);
+        return shard < shards.size() ? Optional.of(shard) : Optional.empty();
+    }
+
+    private void checkSameShard(Long id, int shard, String email) {
+        if (email != null && shardOf(email) != shard) {
+            throw new IllegalArgumentException("Смена email перенесла бы пользователя " + id
+                    + " на другой шард; создайте пользователя с новым email заново");
+        }
+    }
+
+    // Записи раскладываются по шардам; полные пачки отправляются сразу, остатки - параллельно в конце
+    private long chunked(Iterable<User> users, BiFunction<UserDao, List<User>, Long> write) {
+        Map<Integer, List<User>> buffers = new TreeMap<>();
+        long written = 0;
+        for (User user : users) {
+            int shard = shardOf(user.getEmail());
+            List<User> buffer = buffers.computeIfAbsent(shard, s -> new ArrayList<>());
+            buffer.add(user);
+            if (buffer.size() == BATCH_CHUNK_SIZE) {
+                written += write.apply(shards.get(shard), buffer);
+                buffers.remove(shard);
+            }
+        }
+        return written + scatter(buffers, write).stream().mapToLong(Long::longValue).sum();
+    }
+
+    private <R> List<R> scatterAll(Function<UserDao, R> work) {
+        Map<Integer, Void> all = new TreeMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            all.put(shard, null);
+        }
+        return scatter(all, (shard, ignored) -> work.apply(shard));
+    }
+
+    // Выполняет work на перечисленных шардах параллельно; результаты - в порядке номеров шардов
+    private <G, R> List<R> scatter(Map<Integer, G> groups, BiFunction<UserDao, G, R> work) {
+        if (groups.size() == 1) {
+            Map.Entry<Integer, G> only = groups.entrySet().iterator().next();
+            return List.of(work.apply(shards.get(only.getKey()), only.getValue()));
+        }
+        List<Future<R>> futures = new ArrayList<>(groups.size());
+        for (Map.Entry<Integer, G> group : groups.entrySet()) {
+            UserDao shard = shards.get(group.getKey());
+            futures.add(executor.submit(() -> work.apply(shard, group.getValue())));
+        }
+        List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            log.error("Ошибка запроса к шардам: {}", e.getCause().getMessage(), e.getCause());
+            throw new RuntimeException("Ошибка запроса к шардам", e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Запрос к шардам прерван", e);
+        }
+    }
+
+    private static <T> List<T> mergeLists(List<List<T>> lists, Comparator<? super T> order, int limit) {
+        List<T> merged = new ArrayList<>();
+        lists.forEach(merged::addAll);
+        merged.sort(order);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    // Слияние упорядоченных по id потоков шардов; у каждого шарда открыт свой курсор
+    private Stream<User> mergeStreams(Function<UserDao, Stream<User>> open) {
+        List<Stream<User>> streams = new ArrayList<>(shards.size());
+        try {
+            for (UserDao shard : shards) {
+                streams.add(open.apply(shard));
+            }
+        } catch (RuntimeException e) {
+            closeAll(streams);
+            throw e;
+        }
+        Iterator<User> merged = new MergingIterator(streams.stream().map(Stream::iterator).toList());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> closeAll(streams));
+    }
+
+    private static void closeAll(List<Stream<User>> streams) {
+        RuntimeException failure = null;
+        for (Stream<User> stream : streams) {
+            try {
+                stream.close();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static <K> List<K> distinctKeys(Collection<K> keys) {
+        if (keys == null) {
+            return List.of();
+        }
+        if (keys.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Список ключей для поиска пользователей содержит null");
+        }
+        return new ArrayList<>(new LinkedHashSet<>(keys));
+    }
+
+    private record Head(User user, Iterator<User> source) {
+    }
+
+    // k-way слияние: в очереди по одной текущей записи от каждого шарда
+    private static class MergingIterator implements Iterator<User> {
+
+        private final List<Iterator<User>> sources;
+        private PriorityQueue<Head> heads;
+
+        MergingIterator(List<Iterator<User>> sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads().isEmpty();
+        }
+
+        @Override
+        public User next() {
+            Head head = heads().poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            if (head.source().hasNext()) {
+                heads.add(new Head(head.source().next(), head.source()));
+            }
+            return head.user();
+        }
+
+        // Первые записи читаются при первом обращении, а не при создании потока
+        private PriorityQueue<Head> heads() {
+            if (heads == null) {
+                heads = new PriorityQueue<>(Math.max(1, sources.size()), Comparator.comparing(Head::user, BY_ID));
+                for (Iterator<User> source : sources) {
+                    if (source.hasNext()) {
+                        heads.add(new Head(source.next(), source));
+                    }
+                }
+            }
+            return heads;
+        }
+    }
+}
@@ -1,20 +1,160 @@
 package com.example.dao;
 
 import com.example.entity.User;
+import com.example.util.TransactionTemplate;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface UserDao {
 
     User save(User user);
 
+    /**
+     * Сохраняет пользователей одной транзакцией, отправляя INSERT'ы JDBC-пакетами.
+     * Возвращает количество сохраненных записей.
+     */
+    long saveAll(Iterable<User> users);
+
+    default long saveAll(Stream<User> users) {
+        try (users) {
+            return saveAll((Iterable<User>) users::iterator);
+        }
+    }
+
+    /**
+     * Вставляет пользователя или, если email уже занят, обновляет имя и возраст существующей записи —
+     * одним INSERT ... ON CONFLICT (email) DO UPDATE, без предварительного поиска и без гонки
+     * между параллельными вызовами. Проставляет в user id, дату создания и версию итоговой записи.
+     */
+    User upsertByEmail(User user);
+
+    /**
+     * Пакетный вариант upsertByEmail: INSERT ... ON CONFLICT отправляются JDBC-пакетами в одной транзакции.
+     * Записи без изменений не перезаписываются; id в переданные объекты не проставляются.
+     * Возвращает количество отправленных записей (повторы email внутри пакета схлопываются, побеждает последний).
+     */
+    long upsertAll(Iterable<User> users);
+
     Optional<User> findById(Long id);
 
+    /**
+     * Загружает пользователей по списку id пачками, а не отдельным запросом на каждый id.
+     * Результат идет в порядке запроса, ненайденные id перечислены в missing.
+     */
+    UserLookup<Long> findAllByIds(Collection<Long> ids);
+
     List<User> findAll();
 
+    /**
+     * Потоково читает всех пользователей серверным курсором, не загружая таблицу целиком.
+     * Поток держит открытую сессию, поэтому его обязательно нужно закрыть (try-with-resources).
+     */
+    Stream<User> streamAll();
+
+    /**
+     * Потоково читает пользователей с id из диапазона range в порядке возрастания id.
+     * Возвращает неуправляемые копии (для выгрузок, не для изменения);
+     * как и streamAll, держит собственную сессию до закрытия потока.
+     */
+    Stream<User> streamRange(IdRange range);
+
+    /**
+     * Минимальный и максимальный id пользователей; пусто, если таблица пуста.
+     */
+    Optional<IdRange> findIdRange();
+
+    default void forEachUser(Consumer<User> action) {
+        try (Stream<User> users = streamAll()) {
+            users.forEach(action);
+        }
+    }
+
+    /**
+     * Страница пользователей с id больше afterId (null — с начала), в порядке возрастания id.
+     */
+    List<User> findPage(Long afterId, int limit);
+
+    /**
+     * Страница пользователей от новых к старым по (createdAt, id).
+     * cursor — токен из предыдущей страницы или null для первой.
+     */
+    UserPage findPageByCreatedAt(String cursor, int limit);
+
+    /**
+     * Все пользователи в виде проекций (id, name, email) в порядке возрастания id, без загрузки сущностей.
+     */
+    List<UserSummary> findAllSummaries();
+
+    /**
+     * Страница проекций с id больше afterId (null — с начала), в порядке возрастания id.
+     */
+    List<UserSummary> findSummaryPage(Long afterId, int limit);
+
+    /**
+     * Записывает все поля пользователя, если версия в БД совпадает с user.getVersion(), и увеличивает ее.
+     * Если запись изменили или удалили после чтения, бросает OptimisticLockConflictException
+     * и ничего не меняет. Пользователь без версии (не прочитанный из БД) не принимается.
+     */
     User update(User user);
 
+    /**
+     * Обновляет только переданные поля одним UPDATE ... WHERE id = :id, без загрузки сущности;
+     * null означает "не менять". Возвращает число обновленных строк (0 - пользователя нет).
+     */
+    int updateById(Long id, String name, String email, Integer age);
+
+    /**
+     * Применяет частичные обновления JDBC-пакетом одной транзакцией.
+     * Возвращает общее число обновленных строк; обновления несуществующих id пропускаются.
+     */
+    int updateAll(Collection<UserUpdate> updates);
+
     void delete(Long id);
 
+    /**
+     * Удаляет пользователя одним DELETE без загрузки сущности.
+     * Возвращает число удаленных строк (0 - пользователя нет).
+     */
+    int deleteById(Long id);
+
     Optional<User> findByEmail(String email);
-}
\ No newline at end of file
+
+    /**
+     * Загружает пользователей по списку email запросами WHERE email IN (...) ограниченного размера.
+     * Результат идет в порядке запроса, ненайденные email перечислены в missing.
+     */
+    UserLookup<String> findAllByEmails(Collection<String> emails);
+
+    /**
+     * Поиск по подстроке имени или email без учета регистра, по индексам триграмм.
+     * Результаты упорядочены по убыванию score (см. UserSearchHit), при равенстве - по id.
+     */
+    List<UserSearchHit> search(String query, int limit);
+
+    /**
+     * Общее число пользователей (SELECT count(*)).
+     */
+    long count();
+
+    /**
+     * Распределение по возрасту корзинами ширины width, одним GROUP BY в базе.
+     * Корзины по возрастанию возраста, пустые не возвращаются; корзина без возраста - последней.
+     */
+    List<AgeBucket> countByAgeBucket(int width);
+
+    /**
+     * Регистрации по дням createdAt с from по to включительно, одним GROUP BY по индексу created_at.
+     * Каждый день диапазона присутствует в результате, дни без регистраций - с нулем.
+     */
+    List<DailySignups> signupsPerDay(LocalDate from, LocalDate to);
+
+    /**
+     * Единица работы для нескольких вызовов этого DAO: транзакция в той базе, куда он пишет.
+     * Декораторы возвращают шаблон делегата.
+     */
+    TransactionTemplate transactionTemplate();
+}
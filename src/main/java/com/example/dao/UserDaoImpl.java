@@ -1,70 +1,417 @@
 package com.example.dao;
 
 import com.example.entity.User;
+import com.example.util.AppMetrics;
 import com.example.util.HibernateUtil;
+import com.example.util.TransactionTemplate;
 import lombok.extern.log4j.Log4j2;
+import org.hibernate.Cache;
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.query.Query;
+import org.hibernate.type.StandardBasicTypes;
 
+import javax.persistence.OptimisticLockException;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Log4j2
 public class UserDaoImpl implements UserDao {
 
+    // Используется, если hibernate.jdbc.batch_size не задан
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    // Сколько строк драйвер забирает с сервера за раз при потоковом чтении;
+    // с той же периодичностью очищается контекст сессии
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    // Максимум параметров в одном IN (...): с hibernate.query.in_clause_parameter_padding
+    // длина списка дополняется до степени двойки, и подготовленные запросы переиспользуются
+    private static final int IN_CLAUSE_CHUNK_SIZE = 512;
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO users (id, name, email, age, created_at) VALUES (?, ?, ?, ?, ?) "
+                    + "ON CONFLICT (email) DO UPDATE SET name = EXCLUDED.name, age = EXCLUDED.age, version = users.version + 1";
+
+    // Совпадающая запись не перезаписывается: повторная синхронизация не плодит мертвые версии строк
+    private static final String UPSERT_IF_CHANGED_SQL = UPSERT_SQL
+            + " WHERE users.name IS DISTINCT FROM EXCLUDED.name OR users.age IS DISTINCT FROM EXCLUDED.age";
+
+    // Один текст запроса для любого набора полей, поэтому все обновления идут одним JDBC-пакетом.
+    // Версия увеличивается, чтобы прочитавшие запись раньше получили конфликт при update
+    private static final String UPDATE_FIELDS_SQL = "UPDATE users SET name = COALESCE(?, name), "
+            + "email = COALESCE(?, email), age = COALESCE(?, age), version = version + 1 WHERE id = ?";
+
+    private static final String SUMMARY_SELECT =
+            "SELECT new com.example.dao.UserSummary(u.id, u.name, u.email) FROM User u ";
+
+    // Ранг: email совпал целиком, затем имя или email начинается с запроса, затем запрос внутри;
+    // внутри уровня - триграммное сходство лучшего из полей. WHERE идет по GIN-индексам триграмм
+    private static final String SEARCH_SQL = "SELECT {u.*}, "
+            + "CASE WHEN lower(u.email) = lower(:query) THEN 3 "
+            + "WHEN u.name ILIKE :prefix OR u.email ILIKE :prefix THEN 2 ELSE 1 END "
+            + "+ greatest(similarity(u.name, :query), similarity(u.email, :query)) AS score "
+            + "FROM users u WHERE u.name ILIKE :pattern OR u.email ILIKE :pattern "
+            + "ORDER BY score DESC, u.id";
+
+    // Фабрика для записей и транзакций
+    private final Supplier<SessionFactory> factory;
+    // Фабрика для чтения вне транзакции
+    private final Supplier<SessionFactory> readFactory;
+    // Вызывается после каждой записи (окно read-after-write реплик)
+    private final Runnable afterWrite;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public UserDaoImpl() {
+        this(HibernateUtil::getSessionFactory, HibernateUtil::getReadSessionFactory, HibernateUtil::recordWrite);
+    }
+
+    // Все операции в одной фабрике, без реплик: например, шард ShardedUserDao
+    public UserDaoImpl(SessionFactory sessionFactory) {
+        this(() -> sessionFactory, () -> sessionFactory, () -> {
+        });
+    }
+
+    private UserDaoImpl(Supplier<SessionFactory> factory, Supplier<SessionFactory> readFactory, Runnable afterWrite) {
+        this.factory = factory;
+        this.readFactory = readFactory;
+        this.afterWrite = afterWrite;
+        this.transactionTemplate = new TransactionTemplate(factory);
+    }
+
+    @Override
+    public TransactionTemplate transactionTemplate() {
+        return transactionTemplate;
+    }
+
     @Override
     public User save(User user) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            session.save(user);
-            transaction.commit();
-            log.info("Пользователь сохранен: {}", user.getEmail());
+        try {
+            write(session -> session.save(user));
+            log.debug("Пользователь сохранен: {}", user.getEmail());
             return user;
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
             log.error("Ошибка при сохранении пользователя: {}", e.getMessage(), e);
             throw new RuntimeException("Ошибка сохранения пользователя", e);
         }
     }
 
+    @Override
+    public long saveAll(Iterable<User> users) {
+        try (Session session = factory.get().openSession()) {
+            int batchSize = batchSize(session);
+            long saved = 0;
+            Transaction transaction = session.beginTransaction();
+            try {
+                for (User user : users) {
+                    session.save(user);
+                    // Сбрасываем пакет в БД и очищаем контекст, чтобы память не росла
+                    if (++saved % batchSize == 0) {
+                        session.flush();
+                        session.clear();
+                    }
+                }
+                transaction.commit();
+                afterWrite.run();
+            } catch (RuntimeException e) {
+                // Откат до закрытия сессии: после закрытия соединение уже недоступно,
+                // и ошибка отката скрыла бы исходную причину
+                if (transaction.getStatus().canRollback()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+            log.info("Пакетно сохранено пользователей: {}", saved);
+            return saved;
+        } catch (Exception e) {
+            log.error("Ошибка при пакетном сохранении пользователей: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка пакетного сохранения пользователей", e);
+        }
+    }
+
+    @Override
+    public User upsertByEmail(User user) {
+        try {
+            write(session -> {
+                Long id = nextId(session, user);
+                LocalDateTime createdAt = user.getCreatedAt() != null ? user.getCreatedAt() : LocalDateTime.now();
+                return session.doReturningWork(connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement(UPSERT_SQL + " RETURNING id, created_at, version")) {
+                        bindUpsert(statement, id, user, createdAt);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            resultSet.next();
+                            user.setId(resultSet.getLong(1));
+                            user.setCreatedAt(resultSet.getObject(2, LocalDateTime.class));
+                            user.setVersion(resultSet.getLong(3));
+                        }
+                    }
+                    return user;
+                });
+            });
+            // Запрос идет мимо Hibernate, поэтому старая версия записи убирается из кэша второго уровня
+            factory.get().getCache().evictEntityData(User.class, user.getId());
+            log.debug("Пользователь сохранен (upsert): {}", user.getEmail());
+            return user;
+        } catch (Exception e) {
+            log.error("Ошибка при upsert пользователя {}: {}", user.getEmail(), e.getMessage(), e);
+            throw new RuntimeException("Ошибка сохранения пользователя", e);
+        }
+    }
+
+    @Override
+    public long upsertAll(Iterable<User> users) {
+        try {
+            long sent = write(session -> {
+                int batchSize = batchSize(session);
+                Map<String, User> batch = new LinkedHashMap<>();
+                long total = 0;
+                for (User user : users) {
+                    // Дважды затронуть одну строку в одном пакете нельзя - оставляем последнюю версию
+                    batch.remove(user.getEmail());
+                    batch.put(user.getEmail(), user);
+                    if (batch.size() == batchSize) {
+                        total += executeUpsertBatch(session, batch.values());
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    total += executeUpsertBatch(session, batch.values());
+                }
+                return total;
+            });
+            // Какие строки обновились, неизвестно - сбрасываем регион целиком
+            factory.get().getCache().evictEntityData(User.class);
+            log.info("Пакетно сохранено пользователей (upsert): {}", sent);
+            return sent;
+        } catch (Exception e) {
+            log.error("Ошибка при пакетном upsert пользователей: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка пакетного сохранения пользователей", e);
+        }
+    }
+
     @Override
     public Optional<User> findById(Long id) {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            User user = session.get(User.class, id);
-            return Optional.ofNullable(user);
+        try {
+            // Запись из кэша второго уровня primary свежее реплики и не требует запроса к БД
+            SessionFactory primary = factory.get();
+            if (id != null && !TransactionTemplate.isActive(primary) && primary.getCache().containsEntity(User.class, id)) {
+                return read(primary, session -> Optional.ofNullable(session.get(User.class, id)));
+            }
+            return read(session -> Optional.ofNullable(session.get(User.class, id)));
         } catch (Exception e) {
             log.error("Ошибка при поиске пользователя по ID {}: {}", id, e.getMessage(), e);
             throw new RuntimeException("Ошибка поиска пользователя", e);
         }
     }
 
+    @Override
+    public UserLookup<Long> findAllByIds(Collection<Long> ids) {
+        List<Long> keys = distinctKeys(ids);
+        if (keys.isEmpty()) {
+            return UserLookup.of(keys, Map.of());
+        }
+        try {
+            // multiLoad сначала смотрит в контекст сессии и кэш второго уровня,
+            // оставшиеся id грузит пачками по IN_CLAUSE_CHUNK_SIZE
+            List<User> users = read(session -> session.byMultipleIds(User.class)
+                    .withBatchSize(IN_CLAUSE_CHUNK_SIZE)
+                    .multiLoad(keys));
+            Map<Long, User> usersById = new HashMap<>();
+            for (User user : users) {
+                if (user != null) {
+                    usersById.put(user.getId(), user);
+                }
+            }
+            return UserLookup.of(keys, usersById);
+        } catch (Exception e) {
+            log.error("Ошибка при поиске пользователей по списку ID: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка поиска пользователей", e);
+        }
+    }
+
     @Override
     public List<User> findAll() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            Query<User> query = session.createQuery("FROM User", User.class);
-            return query.list();
+        try {
+            return read(session -> session.createQuery("FROM User", User.class).list());
         } catch (Exception e) {
             log.error("Ошибка при получении всех пользователей: {}", e.getMessage(), e);
             throw new RuntimeException("Ошибка получения списка пользователей", e);
         }
     }
 
+    @Override
+    public Stream<User> streamAll() {
+        try {
+            return scroll(session -> session.createQuery("FROM User ORDER BY id", User.class));
+        } catch (Exception e) {
+            log.error("Ошибка при потоковом чтении пользователей: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка потокового чтения пользователей", e);
+        }
+    }
+
+    @Override
+    public Stream<User> streamRange(IdRange range) {
+        try {
+            // Объекты собираются конструктором прямо из строк результата: без гидратации сущностей
+            // и без записи в контекст сессии, что для выгрузок в разы дешевле
+            return scroll(session -> session.createQuery(
+                            "SELECT new com.example.entity.User(u.id, u.name, u.email, u.age, u.createdAt, u.version) "
+                                    + "FROM User u WHERE u.id BETWEEN :from AND :to ORDER BY u.id", User.class)
+                    .setParameter("from", range.from())
+                    .setParameter("to", range.to()));
+        } catch (Exception e) {
+            log.error("Ошибка при потоковом чтении пользователей в диапазоне {}: {}", range, e.getMessage(), e);
+            throw new RuntimeException("Ошибка потокового чтения пользователей", e);
+        }
+    }
+
+    @Override
+    public Optional<IdRange> findIdRange() {
+        try {
+            Object[] bounds = read(session -> session.createQuery(
+                    "SELECT min(u.id), max(u.id) FROM User u", Object[].class).getSingleResult());
+            if (bounds[0] == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new IdRange((Long) bounds[0], (Long) bounds[1]));
+        } catch (Exception e) {
+            log.error("Ошибка при получении диапазона ID пользователей: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка получения диапазона ID пользователей", e);
+        }
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        try {
+            return read(session -> {
+                Query<User> query = session.createQuery(
+                        "FROM User u WHERE u.id > :afterId ORDER BY u.id", User.class);
+                query.setParameter("afterId", afterId != null ? afterId : Long.MIN_VALUE);
+                query.setMaxResults(limit);
+                return query.list();
+            });
+        } catch (Exception e) {
+            log.error("Ошибка при получении страницы пользователей после ID {}: {}", afterId, e.getMessage(), e);
+            throw new RuntimeException("Ошибка получения страницы пользователей", e);
+        }
+    }
+
+    @Override
+    public UserPage findPageByCreatedAt(String cursor, int limit) {
+        CreatedAtCursor position = cursor != null ? CreatedAtCursor.decode(cursor) : null;
+        try {
+            List<User> users = read(session -> {
+                Query<User> query;
+                if (position == null) {
+                    query = session.createQuery(
+                            "FROM User u ORDER BY u.createdAt DESC, u.id DESC", User.class);
+                } else {
+                    // Первое условие ограничивает диапазон сканирования индекса idx_users_created_at_id,
+                    // второе отсекает уже выданные строки с той же меткой времени
+                    query = session.createQuery(
+                            "FROM User u WHERE u.createdAt <= :createdAt "
+                                    + "AND (u.createdAt < :createdAt OR u.id < :id) "
+                                    + "ORDER BY u.createdAt DESC, u.id DESC", User.class);
+                    query.setParameter("createdAt", position.createdAt());
+                    query.setParameter("id", position.id());
+                }
+                // Лишняя строка показывает, есть ли следующая страница
+                query.setMaxResults(limit + 1);
+                return query.list();
+            });
+            if (users.size() <= limit) {
+                return new UserPage(users, null);
+            }
+            List<User> page = users.subList(0, limit);
+            User last = page.get(limit - 1);
+            return new UserPage(page, new CreatedAtCursor(last.getCreatedAt(), last.getId()).encode());
+        } catch (Exception e) {
+            log.error("Ошибка при получении страницы пользователей по дате создания: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка получения страницы пользователей", e);
+        }
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        try {
+            return read(session -> session.createQuery(SUMMARY_SELECT + "ORDER BY u.id", UserSummary.class).list());
+        } catch (Exception e) {
+            log.error("Ошибка при получении списка пользователей: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка получения списка пользователей", e);
+        }
+    }
+
+    @Override
+    public List<UserSummary> findSummaryPage(Long afterId, int limit) {
+        try {
+            return read(session -> session.createQuery(
+                            SUMMARY_SELECT + "WHERE u.id > :afterId ORDER BY u.id", UserSummary.class)
+                    .setParameter("afterId", afterId != null ? afterId : Long.MIN_VALUE)
+                    .setMaxResults(limit)
+                    .list());
+        } catch (Exception e) {
+            log.error("Ошибка при получении страницы пользователей после ID {}: {}", afterId, e.getMessage(), e);
+            throw new RuntimeException("Ошибка получения страницы пользователей", e);
+        }
+    }
+
     @Override
     public User update(User user) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            session.update(user);
-            transaction.commit();
-            log.info("Пользователь обновлен: {}", user.getEmail());
+        if (user.getVersion() == null) {
+            throw new IllegalArgumentException("Пользователь ID " + user.getId()
+                    + " без версии: обновлять можно только прочитанного из БД пользователя");
+        }
+        Long version = user.getVersion();
+        try {
+            write(session -> {
+                session.update(user);
+                // UPDATE ... WHERE version = ? выполняется сразу, чтобы конфликт вернулся из update,
+                // а не из commit внешней единицы работы
+                session.flush();
+                return user;
+            });
+            log.debug("Пользователь обновлен: {}", user.getEmail());
             return user;
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
+            if (isOptimisticLockFailure(e)) {
+                log.debug("Конфликт версий при обновлении пользователя ID {}: {}", user.getId(), e.getMessage());
+                user.setVersion(version);
+                // Следующие чтения потока идут в основную базу: реплика может еще не видеть чужое изменение
+                afterWrite.run();
+                throw new OptimisticLockConflictException(user.getId(), version, e);
             }
             log.error("Ошибка при обновлении пользователя: {}", e.getMessage(), e);
             throw new RuntimeException("Ошибка обновления пользователя", e);
@@ -72,20 +419,104 @@ public class UserDaoImpl implements UserDao {
     }
 
     @Override
-    public void delete(Long id) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            User user = session.get(User.class, id);
-            if (user != null) {
-                session.delete(user);
-                log.info("Пользователь удален: ID {}", id);
+    public int updateById(Long id, String name, String email, Integer age) {
+        StringJoiner assignments = new StringJoiner(", ");
+        if (name != null) {
+            assignments.add("name = :name");
+        }
+        if (email != null) {
+            assignments.add("email = :email");
+        }
+        if (age != null) {
+            assignments.add("age = :age");
+        }
+        if (assignments.length() == 0) {
+            throw new IllegalArgumentException("Не переданы поля для обновления пользователя ID " + id);
+        }
+
+        try {
+            int updated = write(session -> {
+                // VERSIONED увеличивает версию: прочитавшие запись раньше получат конфликт при update
+                Query<?> query = session.createQuery("UPDATE VERSIONED User SET " + assignments + " WHERE id = :id");
+                query.setParameter("id", id);
+                if (name != null) {
+                    query.setParameter("name", name);
+                }
+                if (email != null) {
+                    query.setParameter("email", email);
+                }
+                if (age != null) {
+                    query.setParameter("age", age);
+                }
+                return query.executeUpdate();
+            });
+            if (log.isDebugEnabled()) {
+                log.debug("Пользователь обновлен: ID {}, строк: {}", id, updated);
+            }
+            return updated;
+        } catch (Exception e) {
+            log.error("Ошибка при обновлении пользователя ID {}: {}", id, e.getMessage(), e);
+            throw new RuntimeException("Ошибка обновления пользователя", e);
+        }
+    }
+
+    @Override
+    public int updateAll(Collection<UserUpdate> updates) {
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        try {
+            int updated = write(session -> session.doReturningWork(connection -> {
+                int batchSize = batchSize(session);
+                int rows = 0;
+                int queued = 0;
+                try (PreparedStatement statement = connection.prepareStatement(UPDATE_FIELDS_SQL)) {
+                    for (UserUpdate update : updates) {
+                        statement.setString(1, update.name());
+                        statement.setString(2, update.email());
+                        statement.setObject(3, update.age(), Types.INTEGER);
+                        statement.setLong(4, update.id());
+                        statement.addBatch();
+                        if (++queued % batchSize == 0) {
+                            rows += updatedRows(statement.executeBatch());
+                        }
+                    }
+                    if (queued % batchSize != 0) {
+                        rows += updatedRows(statement.executeBatch());
+                    }
+                }
+                return rows;
+            }));
+            // Запрос идет мимо Hibernate, поэтому старые версии записей убираются из кэша второго уровня
+            Cache cache = factory.get().getCache();
+            updates.forEach(update -> cache.evictEntityData(User.class, update.id()));
+            if (updates.stream().anyMatch(update -> update.email() != null)) {
+                cache.evictNaturalIdData(User.class);
             }
-            transaction.commit();
+            log.debug("Пакетно обновлено пользователей: {}", updated);
+            return updated;
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
+            log.error("Ошибка при пакетном обновлении пользователей: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка пакетного обновления пользователей", e);
+        }
+    }
+
+    @Override
+    public void delete(Long id) {
+        deleteById(id);
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        try {
+            int deleted = write(session -> session.createQuery("DELETE FROM User WHERE id = :id")
+                    .setParameter("id", id)
+                    .executeUpdate());
+            if (deleted > 0) {
+                log.debug("Пользователь удален: ID {}", id);
             }
+            return deleted;
+        } catch (Exception e) {
             log.error("Ошибка при удалении пользователя ID {}: {}", id, e.getMessage(), e);
             throw new RuntimeException("Ошибка удаления пользователя", e);
         }
@@ -93,14 +524,327 @@ public class UserDaoImpl implements UserDao {
 
     @Override
     public Optional<User> findByEmail(String email) {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            Query<User> query = session.createQuery(
-                    "FROM User WHERE email = :email", User.class);
-            query.setParameter("email", email);
-            return Optional.ofNullable(query.uniqueResult());
+        try {
+            // Поиск по натуральному ключу: при включенном кэше обходится без запроса к БД
+            return read(session -> session.bySimpleNaturalId(User.class).loadOptional(email));
         } catch (Exception e) {
             log.error("Ошибка при поиске пользователя по email {}: {}", email, e.getMessage(), e);
             throw new RuntimeException("Ошибка поиска пользователя по email", e);
         }
     }
+
+    @Override
+    public UserLookup<String> findAllByEmails(Collection<String> emails) {
+        List<String> keys = distinctKeys(emails);
+        if (keys.isEmpty()) {
+            return UserLookup.of(keys, Map.of());
+        }
+        try {
+            List<User> users = read(session -> {
+                List<User> result = new ArrayList<>(keys.size());
+                for (int from = 0; from < keys.size(); from += IN_CLAUSE_CHUNK_SIZE) {
+                    List<String> chunk = keys.subList(from, Math.min(from + IN_CLAUSE_CHUNK_SIZE, keys.size()));
+                    result.addAll(session.createQuery("FROM User u WHERE u.email IN (:emails)", User.class)
+                            .setParameterList("emails", chunk)
+                            .list());
+                }
+                return result;
+            });
+            Map<String, User> usersByEmail = new HashMap<>();
+            for (User user : users) {
+                usersByEmail.put(user.getEmail(), user);
+            }
+            return UserLookup.of(keys, usersByEmail);
+        } catch (Exception e) {
+            log.error("Ошибка при поиске пользователей по списку email: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка поиска пользователей по email", e);
+        }
+    }
+
+    @Override
+    public List<UserSearchHit> search(String query, int limit) {
+        String text = query != null ? query.trim() : "";
+        if (text.isEmpty()) {
+            return List.of();
+        }
+        String escaped = escapeLike(text);
+        try {
+            // Строка результата - пользователь (addEntity) и score (addScalar): NativeQuery без типа
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = read(session -> session.createNativeQuery(SEARCH_SQL)
+                    .addEntity("u", User.class)
+                    .addScalar("score", StandardBasicTypes.DOUBLE)
+                    .setParameter("query", text)
+                    .setParameter("prefix", escaped + "%")
+                    .setParameter("pattern", "%" + escaped + "%")
+                    .setMaxResults(limit)
+                    .list());
+            List<UserSearchHit> hits = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                hits.add(new UserSearchHit((User) row[0], (Double) row[1]));
+            }
+            return hits;
+        } catch (Exception e) {
+            log.error("Ошибка при поиске пользователей по запросу '{}': {}", text, e.getMessage(), e);
+            throw new RuntimeException("Ошибка поиска пользователей", e);
+        }
+    }
+
+    @Override
+    public long count() {
+        try {
+            return read(session -> session.createQuery("SELECT count(u) FROM User u", Long.class).getSingleResult());
+        } catch (Exception e) {
+            log.error("Ошибка при подсчете пользователей: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка подсчета пользователей", e);
+        }
+    }
+
+    @Override
+    public List<AgeBucket> countByAgeBucket(int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Ширина корзины возраста должна быть положительной: " + width);
+        }
+        // Ширина подставляется литералом: с параметрами PostgreSQL не узнает одно выражение в SELECT и GROUP BY
+        String bucket = "u.age / " + width;
+        try {
+            List<Object[]> rows = read(session -> session.createQuery("SELECT " + bucket + ", count(u) FROM User u "
+                    + "GROUP BY " + bucket + " ORDER BY " + bucket + " NULLS LAST", Object[].class).list());
+            List<AgeBucket> buckets = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                Integer from = row[0] != null ? ((Number) row[0]).intValue() * width : null;
+                buckets.add(new AgeBucket(from, from != null ? from + width : null, (Long) row[1]));
+            }
+            return buckets;
+        } catch (Exception e) {
+            log.error("Ошибка при подсчете пользователей по возрасту: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка подсчета пользователей по возрасту", e);
+        }
+    }
+
+    @Override
+    public List<DailySignups> signupsPerDay(LocalDate from, LocalDate to) {
+        Objects.requireNonNull(from, "Не задано начало периода");
+        Objects.requireNonNull(to, "Не задан конец периода");
+        if (to.isBefore(from)) {
+            return List.of();
+        }
+        try {
+            // Полуинтервал по created_at, а не cast в WHERE: так условие идет по индексу (created_at, id)
+            List<Object[]> rows = read(session -> session.createQuery(
+                            "SELECT cast(u.createdAt as date), count(u) FROM User u "
+                                    + "WHERE u.createdAt >= :from AND u.createdAt < :to "
+                                    + "GROUP BY cast(u.createdAt as date)", Object[].class)
+                    .setParameter("from", from.atStartOfDay())
+                    .setParameter("to", to.plusDays(1).atStartOfDay())
+                    .list());
+            Map<LocalDate, Long> counts = new HashMap<>();
+            for (Object[] row : rows) {
+                counts.put(((Date) row[0]).toLocalDate(), (Long) row[1]);
+            }
+            List<DailySignups> days = new ArrayList<>();
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                days.add(new DailySignups(day, counts.getOrDefault(day, 0L)));
+            }
+            return days;
+        } catch (Exception e) {
+            log.error("Ошибка при подсчете регистраций с {} по {}: {}", from, to, e.getMessage(), e);
+            throw new RuntimeException("Ошибка подсчета регистраций по дням", e);
+        }
+    }
+
+    /**
+     * Прогрев после старта: частые запросы выполняются по одному разу, чтобы разбор HQL
+     * (кэш планов запросов Hibernate), загрузка классов и первое обращение к таблице
+     * пришлись не на первый пользовательский запрос. Данные не меняются; ошибка прогрева
+     * только логируется.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        try {
+            findPage(null, 1);
+            findPageByCreatedAt(null, 1);
+            findSummaryPage(null, 1);
+            findIdRange();
+            findAllByEmails(List.of(""));
+            log.info("Запросы прогреты за {} мс", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            log.warn("Прогрев запросов не выполнен: {}", e.getMessage());
+        }
+    }
+
+    // Поток сущностей серверным курсором в собственной сессии; сессия закрывается вместе с потоком
+    private Stream<User> scroll(Function<Session, Query<User>> queryFactory) {
+        Session session = readFactory.get().openSession();
+        try {
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            // PostgreSQL отдает строки курсором только при выключенном autocommit,
+            // поэтому чтение идет внутри транзакции
+            Transaction transaction = session.beginTransaction();
+            ScrollableResults results = queryFactory.apply(session)
+                    .setFetchSize(STREAM_FETCH_SIZE)
+                    .setReadOnly(true)
+                    .setCacheMode(CacheMode.IGNORE)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+
+            Spliterator<User> spliterator = new Spliterators.AbstractSpliterator<>(
+                    Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                private long read;
+
+                @Override
+                public boolean tryAdvance(Consumer<? super User> action) {
+                    if (!results.next()) {
+                        return false;
+                    }
+                    action.accept((User) results.get(0));
+                    if (++read % STREAM_FETCH_SIZE == 0) {
+                        session.clear();
+                    }
+                    return true;
+                }
+            };
+
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                try {
+                    results.close();
+                    if (transaction.isActive()) {
+                        transaction.commit();
+                    }
+                } finally {
+                    session.close();
+                }
+            });
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    // Чтение: внутри TransactionTemplate - в общей сессии, иначе в собственной короткой сессии
+    // фабрики для чтения (реплика или primary, см. HibernateUtil.getReadSessionFactory).
+    // Собственная сессия только читает: сущности загружаются без снимков для dirty checking,
+    // а сброс перед запросами не нужен. Общую сессию не трогаем - в ней могут быть
+    // несброшенные изменения той же транзакции
+    private <T> T read(Function<Session, T> work) {
+        SessionFactory sessionFactory = factory.get();
+        if (TransactionTemplate.isActive(sessionFactory)) {
+            return work.apply(sessionFactory.getCurrentSession());
+        }
+        return read(readFactory.get(), work);
+    }
+
+    private <T> T read(SessionFactory sessionFactory, Function<Session, T> work) {
+        try (Session session = openSession(sessionFactory)) {
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            return work.apply(session);
+        }
+    }
+
+    // Запись: внутри TransactionTemplate - в общей транзакции, иначе в собственной
+    // Записи всегда идут на primary; после записи чтения потока на время окна read-after-write тоже
+    private <T> T write(Function<Session, T> work) {
+        SessionFactory sessionFactory = factory.get();
+        if (TransactionTemplate.isActive(sessionFactory)) {
+            T result = work.apply(sessionFactory.getCurrentSession());
+            afterWrite.run();
+            return result;
+        }
+        try (Session session = openSession(sessionFactory)) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                T result = work.apply(session);
+                AppMetrics.transactionCommitTimer().record(transaction::commit);
+                afterWrite.run();
+                return result;
+            } catch (RuntimeException e) {
+                // Откат до закрытия сессии, как в saveAll: иначе ошибка отката скрыла бы исходную причину
+                if (transaction.getStatus().canRollback()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static int executeUpsertBatch(Session session, Collection<User> users) {
+        List<Long> ids = new ArrayList<>(users.size());
+        for (User user : users) {
+            ids.add(nextId(session, user));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT_IF_CHANGED_SQL)) {
+                int i = 0;
+                for (User user : users) {
+                    bindUpsert(statement, ids.get(i++), user, user.getCreatedAt() != null ? user.getCreatedAt() : now);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+        return users.size();
+    }
+
+    private static boolean isOptimisticLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int updatedRows(int[] counts) {
+        int rows = 0;
+        for (int count : counts) {
+            // SUCCESS_NO_INFO (-2): драйвер не сообщил число строк, считаем одну
+            rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+        }
+        return rows;
+    }
+
+    private static void bindUpsert(PreparedStatement statement, Long id, User user, LocalDateTime createdAt)
+            throws SQLException {
+        statement.setLong(1, id);
+        statement.setString(2, user.getName());
+        statement.setString(3, user.getEmail());
+        statement.setObject(4, user.getAge(), Types.INTEGER);
+        statement.setObject(5, createdAt);
+    }
+
+    // id берется из генератора сущности (пул последовательности users_seq), а не через nextval в SQL:
+    // так значения не пересекаются с диапазонами, которые Hibernate уже выдал обычным вставкам
+    private static Long nextId(Session session, User user) {
+        SharedSessionContractImplementor sessionImplementor = (SharedSessionContractImplementor) session;
+        return (Long) sessionImplementor.getFactory().getMetamodel()
+                .entityPersister(User.class)
+                .getIdentifierGenerator()
+                .generate(sessionImplementor, user);
+    }
+
+    private static <K> List<K> distinctKeys(Collection<K> keys) {
+        if (keys == null) {
+            return List.of();
+        }
+        if (keys.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Список ключей для поиска пользователей содержит null");
+        }
+        return new ArrayList<>(new LinkedHashSet<>(keys));
+    }
+
+    // Символы шаблона LIKE во вводе ищутся буквально (экранирование по умолчанию - обратная косая черта)
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static Session openSession(SessionFactory sessionFactory) {
+        return AppMetrics.sessionOpenTimer().record(sessionFactory::openSession);
+    }
+
+    private static int batchSize(Session session) {
+        int batchSize = session.getSessionFactory().getSessionFactoryOptions().getJdbcBatchSize();
+        return batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.example.dao;
+
+import com.example.entity.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат пакетного поиска пользователей по ключам (id или email).
+ * found — найденные пользователи в порядке запрошенных ключей (повторы ключей схлопываются),
+ * missing — ключи, по которым пользователь не найден, в том же порядке.
+ */
+public record UserLookup<K>(List<User> found, List<K> missing) {
+
+    public boolean isComplete() {
+        return missing.isEmpty();
+    }
+
+    static <K> UserLookup<K> of(Collection<K> keys, Map<K, User> usersByKey) {
+        List<User> found = new ArrayList<>(usersByKey.size());
+        List<K> missing = new ArrayList<>();
+        for (K key : keys) {
+            User user = usersByKey.get(key);
+            if (user != null) {
+                found.add(user);
+            } else {
+                missing.add(key);
+            }
+        }
+        return new UserLookup<>(found, missing);
+    }
+}
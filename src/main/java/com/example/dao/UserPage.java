@@ -0,0 +1,16 @@
+package com.example.dao;
+
+import com.example.entity.User;
+
+import java.util.List;
+
+/**
+ * Страница пользователей при keyset-пагинации.
+ * nextCursor передается в следующий запрос; null означает, что страница последняя.
+ */
+public record UserPage(List<User> users, String nextCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.dao;
+
+import com.example.entity.User;
+
+/**
+ * Результат поиска пользователей. score: 3+ — email совпал целиком, 2+ — имя или email
+ * начинается с запроса, 1+ — запрос встречается внутри; дробная часть — триграммное сходство (0..1).
+ */
+public record UserSearchHit(User user, double score) {
+}
@@ -0,0 +1,9 @@
+package com.example.dao;
+
+/**
+ * Облегченное представление пользователя для списков.
+ * Выбирается конструктором прямо в HQL, поэтому не становится управляемой сущностью:
+ * без снимка состояния для dirty checking и без записи в контекст сессии.
+ */
+public record UserSummary(Long id, String name, String email) {
+}
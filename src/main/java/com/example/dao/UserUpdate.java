@@ -0,0 +1,17 @@
+package com.example.dao;
+
+/**
+ * Частичное обновление пользователя: null означает "не менять".
+ */
+public record UserUpdate(Long id, String name, String email, Integer age) {
+
+    /**
+     * Объединяет с более поздним обновлением того же пользователя: его непустые поля побеждают.
+     */
+    public UserUpdate merge(UserUpdate newer) {
+        return new UserUpdate(id,
+                newer.name() != null ? newer.name() : name,
+                newer.email() != null ? newer.email() : email,
+                newer.age() != null ? newer.age() : age);
+    }
+}
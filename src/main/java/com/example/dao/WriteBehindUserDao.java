@@ -0,0 +1,444 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import com.example.util.AppMetrics;
+import com.example.util.HibernateUtil;
+import com.example.util.TransactionTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Отложенная запись поверх другого UserDao для частых правок одних и тех же пользователей.
+ * updateById без смены email не идет в БД сразу: правки одного id сливаются в памяти
+ * и сбрасываются пакетом (updateAll) при накоплении batchSize записей или раз в flushInterval.
+ * Буфер ограничен: при maxPending записях вызывающий поток ждет сброса. После close() правки не принимаются.
+ * findById, findAllByIds и findByEmail видят еще не записанные правки; остальные чтения
+ * возвращают состояние БД. Перед HibernateUtil.shutdown() буфер сбрасывается.
+ */
+@Log4j2
+public class WriteBehindUserDao implements UserDao, AutoCloseable {
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_MAX_PENDING = 10_000;
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final UserDao delegate;
+    private final int batchSize;
+    private final int maxPending;
+    private final Map<Long, UserUpdate> pending = new ConcurrentHashMap<>();
+    // Правки, которые сейчас записываются: чтения видят их до коммита
+    private final Map<Long, UserUpdate> inFlight = new ConcurrentHashMap<>();
+    // Сбросы и синхронные записи по id идут по очереди, иначе более старая правка может закоммититься позже новой
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // Занятые места буфера: id в pending плюс id, которые сейчас записываются сбросом.
+    // Резервируется атомарно (CAS), поэтому параллельные вызовы не переполнят буфер
+    private final AtomicInteger slots = new AtomicInteger();
+    private volatile boolean closed;
+    private final ScheduledExecutorService flusher;
+    private final Runnable shutdownAction = this::close;
+    private final Counter coalesced;
+    private final Counter flushed;
+    private final Gauge pendingGauge;
+
+    public WriteBehindUserDao(UserDao delegate) {
+        this(delegate, DEFAULT_BATCH_SIZE, DEFAULT_MAX_PENDING, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public WriteBehindUserDao(UserDao delegate, int batchSize, int maxPending, Duration flushInterval) {
+        if (batchSize < 1 || maxPending < batchSize) {
+            throw new IllegalArgumentException("Нужно 1 <= batchSize <= maxPending: " + batchSize + ", " + maxPending);
+        }
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        this.coalesced = AppMetrics.registry().counter("user.writebehind.coalesced");
+        this.flushed = AppMetrics.registry().counter("user.writebehind.flushed");
+        // У каждого экземпляра свой буфер, поэтому и свой тег: иначе виден только первый зарегистрированный
+        this.pendingGauge = Gauge.builder("user.writebehind.pending", pending, Map::size)
+                .tag("instance", String.valueOf(INSTANCES.incrementAndGet()))
+                .register(AppMetrics.registry());
+        HibernateUtil.addShutdownAction(shutdownAction);
+    }
+
+    /**
+     * Ставит правку в буфер и возвращает 1, не дожидаясь записи: существование пользователя
+     * проверяется только при сбросе. Смена email уходит в БД сразу — конфликт уникальности
+     * должен увидеть вызывающий код.
+     */
+    @Override
+    public int updateById(Long id, String name, String email, Integer age) {
+        checkOpen();
+        UserUpdate update = new UserUpdate(id, name, email, age);
+        if (email != null) {
+            return writeThrough(() -> {
+                UserUpdate buffered = pending.get(id);
+                UserUpdate merged = buffered != null ? buffered.merge(update) : update;
+                int updated = delegate.updateById(id, merged.name(), merged.email(), merged.age());
+                discardPending(id, buffered);
+                return updated;
+            });
+        }
+        while (!buffer(update)) {
+            // Буфер полон: ждем сброса в потоке сброса, а не в своем - вне транзакции вызывающего кода
+            awaitFlush();
+        }
+        if (closed) {
+            // close() прошел между проверкой и буферизацией: его последний сброс правку мог не увидеть
+            flush();
+        } else if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Записывает все накопленные правки одним пакетом.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            flushRequested.set(false);
+            if (pending.isEmpty()) {
+                return;
+            }
+            // Сначала в inFlight, потом из буфера: чтения не теряют правку ни на миг.
+            // Если правку успели дополнить, remove не сработает и новая версия уйдет следующим сбросом;
+            // место в буфере переходит к inFlight только вместе с удаленной записью
+            Set<Long> moved = new HashSet<>();
+            for (Map.Entry<Long, UserUpdate> entry : pending.entrySet()) {
+                inFlight.put(entry.getKey(), entry.getValue());
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    moved.add(entry.getKey());
+                }
+            }
+            try {
+                int updated = delegate.updateAll(new ArrayList<>(inFlight.values()));
+                slots.addAndGet(-moved.size());
+                flushed.increment(inFlight.size());
+                if (updated < inFlight.size()) {
+                    log.warn("Отложенная запись: {} из {} пользователей не найдены", inFlight.size() - updated, inFlight.size());
+                }
+            } catch (RuntimeException e) {
+                // Возвращаем правки в буфер; более новые правки тех же id остаются поверх
+                inFlight.forEach((id, update) -> restore(id, update, moved.contains(id)));
+                throw e;
+            } finally {
+                inFlight.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Останавливает фоновый сброс и записывает остаток буфера.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        HibernateUtil.removeShutdownAction(shutdownAction);
+        AppMetrics.registry().remove(pendingGauge);
+        flusher.shutdown();
+        flush();
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return delegate.findById(id).map(this::withPending);
+    }
+
+    @Override
+    public UserLookup<Long> findAllByIds(Collection<Long> ids) {
+        UserLookup<Long> lookup = delegate.findAllByIds(ids);
+        return new UserLookup<>(lookup.found().stream().map(this::withPending).toList(), lookup.missing());
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        return delegate.findByEmail(email).map(this::withPending);
+    }
+
+    @Override
+    public User update(User user) {
+        // Полная запись новее отложенных правок этого пользователя; если она не удалась, правки остаются в буфере
+        return writeThrough(() -> {
+            UserUpdate buffered = pending.get(user.getId());
+            User updated = delegate.update(user);
+            discardPending(user.getId(), buffered);
+            return updated;
+        });
+    }
+
+    @Override
+    public void delete(Long id) {
+        writeThrough(() -> {
+            UserUpdate buffered = pending.get(id);
+            delegate.delete(id);
+            discardPending(id, buffered);
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        return writeThrough(() -> {
+            UserUpdate buffered = pending.get(id);
+            int deleted = delegate.deleteById(id);
+            discardPending(id, buffered);
+            return deleted;
+        });
+    }
+
+    @Override
+    public int updateAll(Collection<UserUpdate> updates) {
+        flush();
+        return delegate.updateAll(updates);
+    }
+
+    // Записи, затрагивающие неизвестный заранее набор пользователей, идут после сброса буфера
+
+    @Override
+    public User upsertByEmail(User user) {
+        flush();
+        return delegate.upsertByEmail(user);
+    }
+
+    @Override
+    public long upsertAll(Iterable<User> users) {
+        flush();
+        return delegate.upsertAll(users);
+    }
+
+    @Override
+    public User save(User user) {
+        return delegate.save(user);
+    }
+
+    @Override
+    public long saveAll(Iterable<User> users) {
+        return delegate.saveAll(users);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Stream<User> streamAll() {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> action) {
+        delegate.forEachUser(action);
+    }
+
+    @Override
+    public Stream<User> streamRange(IdRange range) {
+        return delegate.streamRange(range);
+    }
+
+    @Override
+    public Optional<IdRange> findIdRange() {
+        return delegate.findIdRange();
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public UserPage findPageByCreatedAt(String cursor, int limit) {
+        return delegate.findPageByCreatedAt(cursor, limit);
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return delegate.findAllSummaries();
+    }
+
+    @Override
+    public List<UserSummary> findSummaryPage(Long afterId, int limit) {
+        return delegate.findSummaryPage(afterId, limit);
+    }
+
+    @Override
+    public UserLookup<String> findAllByEmails(Collection<String> emails) {
+        UserLookup<String> lookup = delegate.findAllByEmails(emails);
+        return new UserLookup<>(lookup.found().stream().map(this::withPending).toList(), lookup.missing());
+    }
+
+    // Найденные записи показываются с несохраненными правками; сам отбор идет по состоянию БД
+    @Override
+    public List<UserSearchHit> search(String query, int limit) {
+        return delegate.search(query, limit).stream()
+                .map(hit -> new UserSearchHit(withPending(hit.user()), hit.score()))
+                .toList();
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public List<AgeBucket> countByAgeBucket(int width) {
+        return delegate.countByAgeBucket(width);
+    }
+
+    @Override
+    public List<DailySignups> signupsPerDay(LocalDate from, LocalDate to) {
+        return delegate.signupsPerDay(from, to);
+    }
+
+    @Override
+    public TransactionTemplate transactionTemplate() {
+        return delegate.transactionTemplate();
+    }
+
+    private <T> T writeThrough(Supplier<T> write) {
+        writeLock.lock();
+        try {
+            return write.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Новый id занимает место в буфере, только если оно есть; правка уже буферизованного id места не требует
+    private boolean buffer(UserUpdate update) {
+        boolean[] admitted = {true};
+        pending.compute(update.id(), (id, old) -> {
+            if (old != null) {
+                coalesced.increment();
+                return old.merge(update);
+            }
+            if (slots.getAndUpdate(used -> used < maxPending ? used + 1 : used) >= maxPending) {
+                admitted[0] = false;
+                return null;
+            }
+            return update;
+        });
+        return admitted[0];
+    }
+
+    // Убирает из буфера правку, которую перекрыла успешная запись; более новая правка того же id остается
+    private void discardPending(Long id, UserUpdate buffered) {
+        if (buffered != null && pending.remove(id, buffered)) {
+            slots.decrementAndGet();
+        }
+    }
+
+    // Неудавшаяся правка возвращается в буфер под более новыми правками того же id
+    private void restore(Long id, UserUpdate failed, boolean ownsSlot) {
+        pending.compute(id, (key, newer) -> {
+            if (newer == null) {
+                if (!ownsSlot) {
+                    slots.incrementAndGet();
+                }
+                return failed;
+            }
+            if (ownsSlot) {
+                slots.decrementAndGet();
+            }
+            return failed.merge(newer);
+        });
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Отложенная запись остановлена (close), правка не принята");
+        }
+    }
+
+    private void awaitFlush() {
+        if (closed) {
+            flush();
+            return;
+        }
+        try {
+            flusher.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ожидание сброса отложенных записей прервано", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Ошибка сброса отложенных записей", e.getCause());
+        } catch (RejectedExecutionException e) {
+            // Поток сброса остановлен параллельным close()
+            flush();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка сброса отложенных записей, повтор при следующем сбросе: {}", e.getMessage(), e);
+        }
+    }
+
+    // Копия с примененными несохраненными правками: объект делегата (возможно, из кэша) не меняется
+    private User withPending(User user) {
+        UserUpdate update = inFlight.get(user.getId());
+        UserUpdate newer = pending.get(user.getId());
+        if (update == null) {
+            update = newer;
+        } else if (newer != null) {
+            update = update.merge(newer);
+        }
+        if (update == null) {
+            return user;
+        }
+        return User.builder()
+                .id(user.getId())
+                .name(update.name() != null ? update.name() : user.getName())
+                .email(update.email() != null ? update.email() : user.getEmail())
+                .age(update.age() != null ? update.age() : user.getAge())
+                .createdAt(user.getCreatedAt())
+                .version(user.getVersion())
+                .build();
+    }
+}
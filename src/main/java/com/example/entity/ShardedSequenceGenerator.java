@@ -0,0 +1,55 @@
+package com.example.entity;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Генератор id на пуле последовательности, который кодирует номер шарда в младших битах:
+ * id = (значение последовательности << SHARD_BITS) | шард. Номер шарда берется из настройки
+ * hibernate.shard.index фабрики (ее задает HibernateUtil для фабрик шардов), поэтому id
+ * уникальны между базами, а шард находится по id без справочника.
+ * Без настройки id совпадает со значением последовательности, как у обычного генератора.
+ */
+public class ShardedSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String SHARD_INDEX_PROPERTY = "hibernate.shard.index";
+
+    public static final int SHARD_BITS = 10;
+
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+
+    private Integer shard;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        Object index = serviceRegistry.getService(ConfigurationService.class).getSettings().get(SHARD_INDEX_PROPERTY);
+        if (index != null) {
+            shard = Integer.valueOf(index.toString().trim());
+            if (shard < 0 || shard >= MAX_SHARDS) {
+                throw new MappingException("Номер шарда вне диапазона 0.." + (MAX_SHARDS - 1) + ": " + shard);
+            }
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Serializable value = super.generate(session, object);
+        return shard != null ? encode(((Number) value).longValue(), shard) : value;
+    }
+
+    public static long encode(long sequenceValue, int shard) {
+        return (sequenceValue << SHARD_BITS) | shard;
+    }
+
+    public static int shardOf(long id) {
+        return (int) (id & (MAX_SHARDS - 1));
+    }
+}
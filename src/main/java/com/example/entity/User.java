@@ -4,6 +4,13 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -13,16 +20,31 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache(region = "users-natural-id")
+@Table(name = "users", indexes = {
+        // Поддерживает keyset-пагинацию по дате создания
+        @Index(name = "idx_users_created_at_id", columnList = "created_at, id")
+})
 public class User {
 
+    // Пул последовательности (pooled) выдает id без обращения к БД на каждую вставку,
+    // поэтому Hibernate может группировать INSERT'ы в JDBC-пакеты (с IDENTITY это невозможно).
+    // На шардах в младшие биты id добавляется номер шарда (ShardedSequenceGenerator)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_gen")
+    @GenericGenerator(name = "users_id_gen", strategy = "com.example.entity.ShardedSequenceGenerator", parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "users_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")
+    })
     private Long id;
 
     @Column(name = "name", nullable = false)
     private String name;
 
+    // Натуральный ключ: поиск по email идет через кэш email -> id
+    @NaturalId(mutable = true)
     @Column(name = "email", nullable = false, unique = true)
     private String email;
 
@@ -32,6 +54,12 @@ public class User {
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
+    // Оптимистическая блокировка: UPDATE проверяет, что запись не менялась с момента чтения.
+    // null у еще не сохраненного пользователя, после сохранения - 0
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -0,0 +1,104 @@
+package com.example.export;
+
+import com.example.entity.User;
+
+/**
+ * Формат файла выгрузки пользователей. Строка пишется в переиспользуемый StringBuilder,
+ * чтобы на запись приходился один вызов на строку, а не на каждое поле.
+ */
+public enum ExportFormat {
+
+    CSV {
+        @Override
+        public String header() {
+            return "id,name,email,age,created_at\n";
+        }
+
+        @Override
+        void append(User user, StringBuilder line) {
+            line.append(user.getId()).append(',');
+            appendCsv(user.getName(), line);
+            line.append(',');
+            appendCsv(user.getEmail(), line);
+            line.append(',');
+            if (user.getAge() != null) {
+                line.append(user.getAge());
+            }
+            line.append(',');
+            if (user.getCreatedAt() != null) {
+                line.append(user.getCreatedAt());
+            }
+            line.append('\n');
+        }
+    },
+
+    NDJSON {
+        @Override
+        public String header() {
+            return "";
+        }
+
+        @Override
+        void append(User user, StringBuilder line) {
+            line.append("{\"id\":").append(user.getId()).append(",\"name\":");
+            appendJson(user.getName(), line);
+            line.append(",\"email\":");
+            appendJson(user.getEmail(), line);
+            line.append(",\"age\":").append(user.getAge()).append(",\"createdAt\":");
+            appendJson(user.getCreatedAt() != null ? user.getCreatedAt().toString() : null, line);
+            line.append("}\n");
+        }
+    };
+
+    /**
+     * Заголовок файла (для CSV — строка с именами колонок).
+     */
+    public abstract String header();
+
+    abstract void append(User user, StringBuilder line);
+
+    // RFC 4180: поле в кавычках, если в нем есть разделитель, кавычка или перевод строки
+    private static void appendCsv(String value, StringBuilder line) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static void appendJson(String value, StringBuilder line) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                // Управляющие символы, включая переводы строк: строка NDJSON должна оставаться одной строкой
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
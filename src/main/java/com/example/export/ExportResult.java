@@ -0,0 +1,15 @@
+package com.example.export;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Итог выгрузки: файл, количество строк и затраченное время.
+ */
+public record ExportResult(Path file, long rows, Duration elapsed) {
+
+    public double rowsPerSecond() {
+        long millis = Math.max(1, elapsed.toMillis());
+        return rows * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.export;
+
+import com.example.dao.IdRange;
+import com.example.dao.UserDao;
+import com.example.dao.UserDaoImpl;
+import com.example.entity.User;
+import com.example.util.AppMetrics;
+import com.example.util.HibernateUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Параллельная выгрузка таблицы users в CSV или NDJSON.
+ * Диапазон id делится на части, каждая читается в своей сессии серверным курсором
+ * и пишется в свой временный файл; затем части склеиваются в итоговый файл через
+ * FileChannel.transferTo, и он атомарно подменяет target.
+ */
+@Log4j2
+public class UserExporter {
+
+    // Частей больше, чем потоков: неравномерно заполненные диапазоны id выравниваются по нагрузке
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+
+    private static final Duration DEFAULT_PROGRESS_INTERVAL = Duration.ofSeconds(10);
+
+    private final UserDao userDao;
+    private final int parallelism;
+    private final Duration progressInterval;
+
+    public UserExporter() {
+        this(new UserDaoImpl(), defaultParallelism(), DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    public UserExporter(UserDao userDao, int parallelism, Duration progressInterval) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Количество потоков выгрузки должно быть положительным: " + parallelism);
+        }
+        this.userDao = userDao;
+        this.parallelism = parallelism;
+        this.progressInterval = progressInterval;
+    }
+
+    public ExportResult export(Path target, ExportFormat format) {
+        long start = System.nanoTime();
+        String formatTag = format.name().toLowerCase(Locale.ROOT);
+        List<IdRange> partitions = userDao.findIdRange()
+                .map(range -> range.split(parallelism * PARTITIONS_PER_THREAD))
+                .orElse(List.of());
+        log.info("Экспорт пользователей в {} ({}): частей {}, потоков {}", target, formatTag, partitions.size(), parallelism);
+
+        LongAdder rows = new LongAdder();
+        Counter rowsCounter = AppMetrics.registry().counter("user.export.rows", "format", formatTag);
+        List<Path> parts = new ArrayList<>(partitions.size());
+        Path merged = target.resolveSibling(target.getFileName() + ".tmp");
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        try {
+            progress.scheduleAtFixedRate(() -> logProgress(rows.sum(), start),
+                    progressInterval.toMillis(), progressInterval.toMillis(), TimeUnit.MILLISECONDS);
+
+            List<Future<?>> futures = new ArrayList<>(partitions.size());
+            for (int i = 0; i < partitions.size(); i++) {
+                IdRange partition = partitions.get(i);
+                Path part = target.resolveSibling(target.getFileName() + ".part" + i);
+                parts.add(part);
+                futures.add(executor.submit(() -> writePartition(partition, part, format, rows, rowsCounter)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            merge(merged, format, parts);
+            Files.move(merged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            Timer.builder("user.export").tag("format", formatTag).register(AppMetrics.registry()).record(elapsed);
+            ExportResult result = new ExportResult(target, rows.sum(), elapsed);
+            log.info("Экспорт завершен: {} строк за {} мс, {} строк/с",
+                    result.rows(), elapsed.toMillis(), String.format("%.0f", result.rowsPerSecond()));
+            return result;
+        } catch (ExecutionException e) {
+            log.error("Ошибка при экспорте пользователей: {}", e.getCause().getMessage(), e.getCause());
+            throw new RuntimeException("Ошибка экспорта пользователей", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Экспорт пользователей прерван", e);
+        } catch (IOException e) {
+            log.error("Ошибка при записи файла экспорта {}: {}", target, e.getMessage(), e);
+            throw new RuntimeException("Ошибка записи файла экспорта", e);
+        } finally {
+            executor.shutdownNow();
+            progress.shutdownNow();
+            parts.forEach(UserExporter::deleteQuietly);
+            deleteQuietly(merged);
+        }
+    }
+
+    private void writePartition(IdRange partition, Path part, ExportFormat format, LongAdder rows, Counter rowsCounter) {
+        long written = 0;
+        StringBuilder line = new StringBuilder(256);
+        try (Stream<User> users = userDao.streamRange(partition);
+             FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), WRITE_BUFFER_SIZE)) {
+            Iterator<User> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                line.setLength(0);
+                format.append(iterator.next(), line);
+                writer.append(line);
+                written++;
+                rows.increment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            rowsCounter.increment(written);
+        }
+        log.debug("Часть {} выгружена: {} строк", partition, written);
+    }
+
+    private static void merge(Path merged, ExportFormat format, List<Path> parts) throws IOException {
+        try (FileChannel out = FileChannel.open(merged, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(StandardCharsets.UTF_8.encode(format.header()));
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    // Копирование на стороне ядра, без прохода данных через heap
+                    long size = in.size();
+                    for (long position = 0; position < size; ) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void logProgress(long rows, long start) {
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Экспорт: выгружено {} строк, {} строк/с", rows, rows * 1000 / millis);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временный файл {}: {}", path, e.getMessage());
+        }
+    }
+
+    // Половина пула соединений остается под обычные запросы приложения
+    private static int defaultParallelism() {
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                HibernateUtil.getConnectionPoolSize() / 2));
+    }
+}
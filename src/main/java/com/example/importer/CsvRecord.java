@@ -0,0 +1,9 @@
+package com.example.importer;
+
+import java.util.List;
+
+/**
+ * Запись CSV и номер строки файла, с которой она начинается.
+ */
+record CsvRecord(long line, List<String> fields) {
+}
@@ -0,0 +1,93 @@
+package com.example.importer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Журнал закоммиченных пачек импорта: первая строка — размер пачки, далее номера пачек.
+ * Номер дописывается и сбрасывается на диск сразу после коммита, поэтому после сбоя
+ * повторный запуск пропускает уже загруженные пачки.
+ */
+final class ImportCheckpoint implements AutoCloseable {
+
+    private static final String HEADER_PREFIX = "chunk-size ";
+
+    private final Path path;
+    private final Set<Long> committed = ConcurrentHashMap.newKeySet();
+    private final FileChannel channel;
+
+    ImportCheckpoint(Path path, int chunkSize) {
+        this.path = path;
+        try {
+            boolean resume = Files.exists(path);
+            if (resume) {
+                List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+                String header = HEADER_PREFIX + chunkSize;
+                if (lines.isEmpty() || !lines.get(0).equals(header)) {
+                    throw new IllegalStateException("Файл контрольной точки " + path
+                            + " создан с другим размером пачки; удалите его, чтобы начать импорт заново");
+                }
+                // Последняя строка может быть оборвана сбоем - ее пачка просто загрузится повторно
+                lines.stream().skip(1).filter(line -> line.matches("\\d+")).map(Long::valueOf).forEach(committed::add);
+            }
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            if (!resume) {
+                append(HEADER_PREFIX + chunkSize);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    boolean isCommitted(long chunk) {
+        return committed.contains(chunk);
+    }
+
+    int committedCount() {
+        return committed.size();
+    }
+
+    void markCommitted(long chunk) {
+        committed.add(chunk);
+        append(Long.toString(chunk));
+    }
+
+    /**
+     * Импорт завершен целиком: журнал больше не нужен.
+     */
+    void complete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void append(String line) {
+        try {
+            channel.write(StandardCharsets.UTF_8.encode(line + "\n"));
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.importer;
+
+import java.time.Duration;
+
+/**
+ * Итог импорта: загружено строк, отклонено строк, пропущено пачек, загруженных при прошлом запуске.
+ */
+public record ImportResult(long imported, long rejected, long skippedChunks, Duration elapsed) {
+
+    public double rowsPerSecond() {
+        long millis = Math.max(1, elapsed.toMillis());
+        return imported * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,437 @@
+package com.example.importer;
+
+import com.example.dao.UserDao;
+import com.example.dao.UserDaoImpl;
+import com.example.entity.User;
+import com.example.util.AppMetrics;
+import com.example.util.HibernateUtil;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.exception.ConstraintViolationException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Параллельная загрузка пользователей из CSV (колонки name, email и необязательная age).
+ * Конвейер: чтение и разбор файла -> проверка строк -> N писателей, каждый сохраняет пачку
+ * одной транзакцией через saveAll. Стадии связаны ограниченными очередями, поэтому чтение
+ * не убегает вперед записи и память не растет. Некорректные строки пишутся в файл отказов,
+ * номера закоммиченных пачек — в файл контрольной точки, и повторный запуск после сбоя
+ * продолжает с незагруженных пачек. Пачка, которая успела закоммититься, но не попала в контрольную
+ * точку (сбой между ними), при повторе отказов не дает: строки, уже лежащие в БД с теми же данными,
+ * считаются загруженными.
+ */
+@Log4j2
+public class UserImporter {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(10);
+
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private static final int MAX_AGE = 150;
+
+    private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s]+");
+
+    // Маркеры конца потока пачек
+    private static final RawChunk END_OF_INPUT = new RawChunk(-1, List.of());
+    private static final ValidChunk END_OF_CHUNKS = new ValidChunk(-1, List.of(), List.of(), List.of());
+
+    private final UserDao userDao;
+    private final int writers;
+    private final int chunkSize;
+
+    public UserImporter() {
+        this(new UserDaoImpl(), defaultWriters(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public UserImporter(UserDao userDao, int writers, int chunkSize) {
+        if (writers < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Количество писателей и размер пачки должны быть положительными");
+        }
+        this.userDao = userDao;
+        this.writers = writers;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Импорт с файлами отказов и контрольной точки рядом с исходным: source.rejects.csv и source.checkpoint.
+     */
+    public ImportResult importCsv(Path source) {
+        return importCsv(source,
+                source.resolveSibling(source.getFileName() + ".rejects.csv"),
+                source.resolveSibling(source.getFileName() + ".checkpoint"));
+    }
+
+    public ImportResult importCsv(Path source, Path rejectsFile, Path checkpointFile) {
+        long start = System.nanoTime();
+        Counters counters = new Counters();
+        BlockingQueue<RawChunk> parsed = new ArrayBlockingQueue<>(writers * 2);
+        BlockingQueue<ValidChunk> validated = new ArrayBlockingQueue<>(writers * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        try (ImportCheckpoint checkpoint = new ImportCheckpoint(checkpointFile, chunkSize);
+             RejectsWriter rejects = new RejectsWriter(rejectsFile, checkpoint.committedCount() > 0)) {
+            if (checkpoint.committedCount() > 0) {
+                log.info("Возобновление импорта {}: уже загружено пачек {}", source, checkpoint.committedCount());
+            }
+            progress.scheduleAtFixedRate(() -> logProgress(counters, start),
+                    PROGRESS_INTERVAL.toMillis(), PROGRESS_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+
+            CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+            stages.submit(() -> read(source, checkpoint, parsed, counters));
+            stages.submit(() -> validate(parsed, validated));
+            for (int i = 0; i < writers; i++) {
+                stages.submit(() -> write(validated, checkpoint, rejects, counters));
+            }
+            // Первая же упавшая стадия прерывает остальные: иначе они повиснут на очередях
+            for (int i = 0; i < writers + 2; i++) {
+                stages.take().get();
+            }
+            checkpoint.complete();
+
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            ImportResult result = new ImportResult(counters.imported.get(), counters.rejected.get(),
+                    counters.skippedChunks.get(), elapsed);
+            log.info("Импорт {} завершен: загружено {}, отклонено {}, пропущено пачек {}, {} строк/с",
+                    source, result.imported(), result.rejected(), result.skippedChunks(),
+                    String.format("%.0f", result.rowsPerSecond()));
+            return result;
+        } catch (ExecutionException e) {
+            log.error("Ошибка при импорте пользователей из {}: {}", source, e.getCause().getMessage(), e.getCause());
+            throw new RuntimeException("Ошибка импорта пользователей", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Импорт пользователей прерван", e);
+        } finally {
+            executor.shutdownNow();
+            progress.shutdownNow();
+        }
+    }
+
+    // Стадия 1: разбор файла и нарезка записей на пачки; пачки из контрольной точки пропускаются
+    private Void read(Path source, ImportCheckpoint checkpoint, BlockingQueue<RawChunk> parsed, Counters counters)
+            throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+             CsvReader reader = new CsvReader(new BufferedReader(
+                     Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), READ_BUFFER_SIZE),
+                     READ_BUFFER_SIZE))) {
+            CsvRecord header = reader.next();
+            if (header == null) {
+                throw new IllegalArgumentException("Файл " + source + " пуст");
+            }
+            Columns columns = Columns.of(header);
+            long index = 0;
+            List<CsvRecord> records = new ArrayList<>(chunkSize);
+            for (CsvRecord record = reader.next(); record != null; record = reader.next()) {
+                records.add(columns.select(record));
+                if (records.size() == chunkSize) {
+                    enqueue(new RawChunk(index++, records), checkpoint, parsed, counters);
+                    records = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!records.isEmpty()) {
+                enqueue(new RawChunk(index, records), checkpoint, parsed, counters);
+            }
+        }
+        // При ошибке маркер не ставится: остальные стадии прерывает importCsv
+        parsed.put(END_OF_INPUT);
+        return null;
+    }
+
+    private static void enqueue(RawChunk chunk, ImportCheckpoint checkpoint, BlockingQueue<RawChunk> parsed,
+                                Counters counters) throws InterruptedException {
+        if (checkpoint.isCommitted(chunk.index())) {
+            counters.skippedChunks.incrementAndGet();
+        } else {
+            // Блокируется, пока писатели не разберут очередь
+            parsed.put(chunk);
+        }
+    }
+
+    // Стадия 2: проверка строк; для каждой пачки - корректные пользователи и отказы
+    private Void validate(BlockingQueue<RawChunk> parsed, BlockingQueue<ValidChunk> validated)
+            throws InterruptedException {
+        for (RawChunk chunk = parsed.take(); chunk != END_OF_INPUT; chunk = parsed.take()) {
+            List<User> users = new ArrayList<>(chunk.records().size());
+            List<Long> lines = new ArrayList<>(chunk.records().size());
+            List<Reject> rejects = new ArrayList<>();
+            for (CsvRecord record : chunk.records()) {
+                String error = validate(record);
+                if (error != null) {
+                    rejects.add(new Reject(record, error));
+                } else {
+                    users.add(toUser(record));
+                    lines.add(record.line());
+                }
+            }
+            validated.put(new ValidChunk(chunk.index(), users, lines, rejects));
+        }
+        for (int i = 0; i < writers; i++) {
+            validated.put(END_OF_CHUNKS);
+        }
+        return null;
+    }
+
+    // Стадия 3: пачка сохраняется одной транзакцией, после коммита ее номер попадает в контрольную точку
+    private Void write(BlockingQueue<ValidChunk> validated, ImportCheckpoint checkpoint, RejectsWriter rejects,
+                       Counters counters) throws InterruptedException {
+        for (ValidChunk chunk = validated.take(); chunk != END_OF_CHUNKS; chunk = validated.take()) {
+            List<Reject> chunkRejects = new ArrayList<>(chunk.rejects());
+            long saved = save(chunk, chunkRejects);
+            rejects.write(chunkRejects);
+            checkpoint.markCommitted(chunk.index());
+            counters.imported(saved);
+            counters.rejected(chunkRejects.size());
+        }
+        return null;
+    }
+
+    private long save(ValidChunk chunk, List<Reject> rejects) {
+        if (chunk.users().isEmpty()) {
+            return 0;
+        }
+        try {
+            return userDao.saveAll(chunk.users());
+        } catch (RuntimeException e) {
+            if (!isConstraintViolation(e)) {
+                throw e;
+            }
+        }
+        // В пачке есть дубликат email: пачка откатилась целиком, сохраняем ее построчно
+        // и отклоняем только конфликтующие строки
+        log.debug("Пачка {} нарушает ограничение, построчная загрузка", chunk.index());
+        Map<String, User> existing = existingByEmail(chunk.users());
+        long saved = 0;
+        for (int i = 0; i < chunk.users().size(); i++) {
+            User user = chunk.users().get(i);
+            // remove: повтор той же строки внутри файла - уже настоящий дубликат
+            if (isSameUser(existing.remove(user.getEmail()), user)) {
+                saved++;
+                continue;
+            }
+            try {
+                userDao.save(User.builder().name(user.getName()).email(user.getEmail()).age(user.getAge()).build());
+                saved++;
+            } catch (RuntimeException e) {
+                if (!isConstraintViolation(e)) {
+                    throw e;
+                }
+                rejects.add(new Reject(new CsvRecord(chunk.lines().get(i),
+                        List.of(user.getName(), user.getEmail(), user.getAge() != null ? user.getAge().toString() : "")),
+                        "email уже существует"));
+            }
+        }
+        return saved;
+    }
+
+    // Пользователи пачки, которые уже есть в БД (пачка откатилась, значит, записаны до нее -
+    // например, прошлым запуском, упавшим до записи контрольной точки)
+    private Map<String, User> existingByEmail(List<User> users) {
+        List<String> emails = users.stream().map(User::getEmail).toList();
+        Map<String, User> existing = new HashMap<>();
+        for (User user : userDao.findAllByEmails(emails).found()) {
+            existing.put(user.getEmail(), user);
+        }
+        return existing;
+    }
+
+    private static boolean isSameUser(User existing, User imported) {
+        return existing != null
+                && Objects.equals(existing.getName(), imported.getName())
+                && Objects.equals(existing.getAge(), imported.getAge());
+    }
+
+    // null - строка корректна, иначе описание ошибки
+    private static String validate(CsvRecord record) {
+        List<String> fields = record.fields();
+        if (fields.size() < 3) {
+            return "неверное число колонок";
+        }
+        String name = fields.get(0).trim();
+        if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            return "имя пустое или длиннее " + MAX_NAME_LENGTH + " символов";
+        }
+        if (!EMAIL.matcher(fields.get(1).trim()).matches()) {
+            return "некорректный email";
+        }
+        String age = fields.get(2).trim();
+        if (!age.isEmpty()) {
+            try {
+                int value = Integer.parseInt(age);
+                if (value < 0 || value > MAX_AGE) {
+                    return "возраст вне диапазона 0.." + MAX_AGE;
+                }
+            } catch (NumberFormatException e) {
+                return "возраст не число";
+            }
+        }
+        return null;
+    }
+
+    private static User toUser(CsvRecord record) {
+        String age = record.fields().get(2).trim();
+        return User.builder()
+                .name(record.fields().get(0).trim())
+                .email(record.fields().get(1).trim())
+                .age(age.isEmpty() ? null : Integer.valueOf(age))
+                .build();
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void logProgress(Counters counters, long start) {
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        long imported = counters.imported.get();
+        log.info("Импорт: загружено {}, отклонено {}, {} строк/с",
+                imported, counters.rejected.get(), imported * 1000 / millis);
+    }
+
+    // Половина пула соединений остается под обычные запросы приложения
+    private static int defaultWriters() {
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                HibernateUtil.getConnectionPoolSize() / 2));
+    }
+
+    private record RawChunk(long index, List<CsvRecord> records) {
+    }
+
+    private record ValidChunk(long index, List<User> users, List<Long> lines, List<Reject> rejects) {
+    }
+
+    private record Reject(CsvRecord record, String error) {
+    }
+
+    // Позиции нужных колонок в заголовке; порядок колонок в файле произвольный, лишние игнорируются
+    private record Columns(int name, int email, int age) {
+
+        static Columns of(CsvRecord header) {
+            List<String> names = header.fields().stream()
+                    .map(field -> field.trim().toLowerCase(Locale.ROOT))
+                    .toList();
+            if (!names.contains("name") || !names.contains("email")) {
+                throw new IllegalArgumentException("В заголовке CSV нет обязательных колонок name и email: " + names);
+            }
+            return new Columns(names.indexOf("name"), names.indexOf("email"), names.indexOf("age"));
+        }
+
+        // Запись в порядке name, email, age; отсутствующие колонки - пустые строки
+        CsvRecord select(CsvRecord record) {
+            List<String> fields = record.fields();
+            if (fields.size() <= Math.max(name, Math.max(email, age))) {
+                return new CsvRecord(record.line(), List.of());
+            }
+            return new CsvRecord(record.line(), List.of(fields.get(name), fields.get(email),
+                    age >= 0 ? fields.get(age) : ""));
+        }
+    }
+
+    private static final class Counters {
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong skippedChunks = new AtomicLong();
+        private final Counter importedRows = AppMetrics.registry().counter("user.import.rows", "result", "imported");
+        private final Counter rejectedRows = AppMetrics.registry().counter("user.import.rows", "result", "rejected");
+
+        void imported(long rows) {
+            imported.addAndGet(rows);
+            importedRows.increment(rows);
+        }
+
+        void rejected(long rows) {
+            rejected.addAndGet(rows);
+            rejectedRows.increment(rows);
+        }
+    }
+
+    // Отказы: номер строки исходного файла, причина и исходные значения; пишут все писатели
+    private static final class RejectsWriter implements AutoCloseable {
+
+        private final Writer writer;
+
+        RejectsWriter(Path path, boolean append) {
+            try {
+                FileChannel channel = append
+                        ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                        : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                this.writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), 64 * 1024);
+                if (!append) {
+                    writer.write("line,error,name,email,age\n");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void write(List<Reject> rejects) {
+            if (rejects.isEmpty()) {
+                return;
+            }
+            try {
+                for (Reject reject : rejects) {
+                    StringBuilder line = new StringBuilder().append(reject.record().line()).append(',');
+                    appendCsv(reject.error(), line);
+                    for (String field : reject.record().fields()) {
+                        line.append(',');
+                        appendCsv(field, line);
+                    }
+                    writer.append(line).append('\n');
+                }
+                // Отказы пачки должны быть на диске до записи ее номера в контрольную точку
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void appendCsv(String value, StringBuilder line) {
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+    }
+}
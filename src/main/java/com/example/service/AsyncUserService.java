@@ -0,0 +1,145 @@
+package com.example.service;
+
+import com.example.entity.User;
+import com.example.util.HibernateUtil;
+import lombok.extern.log4j.Log4j2;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Неблокирующая обертка над UserService. Каждый вызов выполняется в отдельной задаче,
+ * а семафор ограничивает число одновременных обращений к БД размером пула соединений,
+ * чтобы тысячи вызывающих ждали разрешения, а не соединения в пуле.
+ * Вызывающий поток не блокируется: если задачу не удалось поставить в очередь (очередь пула
+ * переполнена или сервис закрыт), future сразу завершается с RejectedExecutionException.
+ * Чтение после записи через этот сервис идет с primary в пределах окна hibernate.replica.read_after_write_ms,
+ * хотя запись и чтение выполняются в разных потоках: окно ReplicaRouter переносится в каждую задачу.
+ */
+@Log4j2
+public class AsyncUserService implements AutoCloseable {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    // Очередь задач пула платформенных потоков на один поток
+    private static final int FALLBACK_QUEUE_PER_THREAD = 100;
+
+    private final UserService userService;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    // Последняя запись через этот сервис (по часам ReplicaRouter); окно роутера привязано к потоку,
+    // а задачи идут в разных потоках, поэтому оно хранится здесь и передается каждой задаче
+    private final AtomicReference<Long> lastWrite = new AtomicReference<>();
+
+    public AsyncUserService() {
+        this(new UserService(), HibernateUtil.getConnectionPoolSize());
+    }
+
+    public AsyncUserService(UserService userService, int maxConcurrency) {
+        this(userService, newExecutor(maxConcurrency), maxConcurrency);
+    }
+
+    public AsyncUserService(UserService userService, ExecutorService executor, int maxConcurrency) {
+        this.userService = userService;
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    public CompletableFuture<User> createUser(String name, String email, Integer age) {
+        return submit(() -> userService.createUser(name, email, age));
+    }
+
+    public CompletableFuture<Optional<User>> getUserById(Long id) {
+        return submit(() -> userService.getUserById(id));
+    }
+
+    public CompletableFuture<List<User>> getAllUsers() {
+        return submit(userService::getAllUsers);
+    }
+
+    public CompletableFuture<User> updateUser(Long id, String name, String email, Integer age) {
+        return submit(() -> userService.updateUser(id, name, email, age));
+    }
+
+    public CompletableFuture<Void> patchUser(Long id, String name, String email, Integer age) {
+        return submit(() -> {
+            userService.patchUser(id, name, email, age);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteUser(Long id) {
+        return submit(() -> userService.deleteUser(id));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Не все асинхронные операции завершились за {} с", SHUTDOWN_TIMEOUT_SECONDS);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Операция прервана в ожидании соединения", e);
+                }
+                HibernateUtil.restoreLastWrite(lastWrite.get());
+                try {
+                    return call.get();
+                } finally {
+                    permits.release();
+                    rememberWrite(HibernateUtil.lastWrite());
+                    HibernateUtil.restoreLastWrite(null);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("Асинхронная операция отклонена: {}", e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void rememberWrite(Long writtenAt) {
+        if (writtenAt != null) {
+            lastWrite.accumulateAndGet(writtenAt, (current, written) ->
+                    current == null || written - current > 0 ? written : current);
+        }
+    }
+
+    // На Java 21+ задачи выполняются в виртуальных потоках, ожидание семафора и JDBC их не держит;
+    // на более старых JVM - пул платформенных потоков размером с пул соединений и ограниченной очередью:
+    // при переполненной очереди задача отклоняется (AbortPolicy), и вызывающий получает ошибку в future
+    private static ExecutorService newExecutor(int maxConcurrency) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            log.info("AsyncUserService использует виртуальные потоки");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Виртуальные потоки недоступны, AsyncUserService использует пул из {} потоков", maxConcurrency);
+            return new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(maxConcurrency * FALLBACK_QUEUE_PER_THREAD),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+}
@@ -1,73 +1,284 @@
 package com.example.service;
 
+import com.example.dao.AgeBucket;
+import com.example.dao.DailySignups;
 import com.example.dao.UserDao;
+import com.example.dao.MeteredUserDao;
+import com.example.dao.OptimisticLockConflictException;
 import com.example.dao.UserDaoImpl;
+import com.example.dao.UserLookup;
+import com.example.dao.UserPage;
+import com.example.dao.UserSearchHit;
+import com.example.dao.UserSummary;
 import com.example.entity.User;
+import com.example.util.TransactionTemplate;
 import lombok.extern.log4j.Log4j2;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Log4j2
 public class UserService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MIN_SEARCH_LENGTH = 3;
+
+    private static final int MAX_SIGNUP_DAYS = 366;
+
+    // Повторы при конфликте версий: пауза случайная от 0 до base * 2^попытка, не больше max
+    private static final int MAX_UPDATE_ATTEMPTS = 5;
+    private static final long UPDATE_BACKOFF_BASE_MS = 10;
+    private static final long UPDATE_BACKOFF_MAX_MS = 200;
+
     private final UserDao userDao;
+    private final TransactionTemplate transactionTemplate;
 
-    public UserService(UserDao userDao) {
+    public UserService(UserDao userDao, TransactionTemplate transactionTemplate) {
         this.userDao = userDao;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public UserService(UserDao userDao) {
+        // Транзакция в той базе, с которой работает DAO (у ShardedUserDao общей транзакции нет)
+        this(userDao, userDao.transactionTemplate());
     }
 
     public UserService() {
-        this.userDao = new UserDaoImpl();
+        this(new MeteredUserDao(new UserDaoImpl()));
     }
 
     public User createUser(String name, String email, Integer age) {
-        log.info("Создание пользователя: {}, {}", name, email);
+        log.debug("Создание пользователя: {}, {}", name, email);
 
-        Optional<User> existingUser = userDao.findByEmail(email);
-        if (existingUser.isPresent()) {
-            log.warn("Пользователь с email {} уже существует", email);
-            throw new RuntimeException("Пользователь с таким email уже существует");
-        }
+        // Проверка и вставка в одной сессии и транзакции: одно соединение вместо двух,
+        // а при гонке вставка упирается в уникальный email и откатывается целиком
+        return transactionTemplate.execute(() -> {
+            Optional<User> existingUser = userDao.findByEmail(email);
+            if (existingUser.isPresent()) {
+                log.warn("Пользователь с email {} уже существует", email);
+                throw new RuntimeException("Пользователь с таким email уже существует");
+            }
+
+            User user = User.builder()
+                    .name(name)
+                    .email(email)
+                    .age(age)
+                    .build();
+
+            return userDao.save(user);
+        });
+    }
 
-        User user = User.builder()
+    /**
+     * Создает пользователя или обновляет имя и возраст пользователя с тем же email одним запросом.
+     */
+    public User upsertUser(String name, String email, Integer age) {
+        log.debug("Создание или обновление пользователя: {}, {}", name, email);
+        return userDao.upsertByEmail(User.builder()
                 .name(name)
                 .email(email)
                 .age(age)
-                .build();
+                .build());
+    }
+
+    public long upsertUsers(Iterable<User> users) {
+        log.debug("Пакетное создание или обновление пользователей");
+        return userDao.upsertAll(users);
+    }
 
-        return userDao.save(user);
+    public long createUsers(Iterable<User> users) {
+        log.debug("Пакетное создание пользователей");
+        return userDao.saveAll(users);
+    }
+
+    public long createUsers(Stream<User> users) {
+        log.debug("Пакетное создание пользователей из потока");
+        return userDao.saveAll(users);
     }
 
     public Optional<User> getUserById(Long id) {
-        log.info("Получение пользователя по ID: {}", id);
+        log.trace("Получение пользователя по ID: {}", id);
         return userDao.findById(id);
     }
 
+    /**
+     * Пользователи по списку id за один проход вместо вызова getUserById в цикле.
+     */
+    public UserLookup<Long> getUsersByIds(Collection<Long> ids) {
+        if (log.isTraceEnabled()) {
+            log.trace("Получение пользователей по списку ID, количество: {}", ids != null ? ids.size() : 0);
+        }
+        return userDao.findAllByIds(ids);
+    }
+
+    public UserLookup<String> getUsersByEmails(Collection<String> emails) {
+        if (log.isTraceEnabled()) {
+            log.trace("Получение пользователей по списку email, количество: {}", emails != null ? emails.size() : 0);
+        }
+        return userDao.findAllByEmails(emails);
+    }
+
     public List<User> getAllUsers() {
-        log.info("Получение всех пользователей");
+        log.trace("Получение всех пользователей");
         return userDao.findAll();
     }
 
+    public Stream<User> streamAllUsers() {
+        log.trace("Потоковое чтение всех пользователей");
+        return userDao.streamAll();
+    }
+
+    public void forEachUser(Consumer<User> action) {
+        log.trace("Обход всех пользователей");
+        userDao.forEachUser(action);
+    }
+
+    public List<User> getUsersPage(Long afterId, int limit) {
+        if (log.isTraceEnabled()) {
+            log.trace("Получение страницы пользователей после ID: {}, размер: {}", afterId, limit);
+        }
+        checkPageSize(limit);
+        return userDao.findPage(afterId, limit);
+    }
+
+    public UserPage getUsersPageByCreatedAt(String cursor, int limit) {
+        if (log.isTraceEnabled()) {
+            log.trace("Получение страницы пользователей по дате создания, размер: {}", limit);
+        }
+        checkPageSize(limit);
+        return userDao.findPageByCreatedAt(cursor, limit);
+    }
+
+    public List<UserSummary> getUserSummaries() {
+        log.trace("Получение списка пользователей (id, имя, email)");
+        return userDao.findAllSummaries();
+    }
+
+    public List<UserSummary> getUserSummariesPage(Long afterId, int limit) {
+        if (log.isTraceEnabled()) {
+            log.trace("Получение страницы пользователей (id, имя, email) после ID: {}, размер: {}", afterId, limit);
+        }
+        checkPageSize(limit);
+        return userDao.findSummaryPage(afterId, limit);
+    }
+
+    // Подстрока короче триграммы не может использовать индекс и просматривала бы всю таблицу
+    public List<UserSearchHit> searchUsers(String query, int limit) {
+        if (log.isTraceEnabled()) {
+            log.trace("Поиск пользователей: '{}', размер: {}", query, limit);
+        }
+        if (query == null || query.trim().length() < MIN_SEARCH_LENGTH) {
+            throw new IllegalArgumentException("Строка поиска должна содержать не менее " + MIN_SEARCH_LENGTH + " символов");
+        }
+        checkPageSize(limit);
+        return userDao.search(query, limit);
+    }
+
+    public long countUsers() {
+        log.trace("Подсчет пользователей");
+        return userDao.count();
+    }
+
+    public List<AgeBucket> getAgeDistribution(int bucketWidth) {
+        log.trace("Распределение пользователей по возрасту, ширина корзины: {}", bucketWidth);
+        if (bucketWidth < 1) {
+            throw new IllegalArgumentException("Ширина корзины возраста должна быть положительной");
+        }
+        return userDao.countByAgeBucket(bucketWidth);
+    }
+
+    // Ответ содержит строку на каждый день, поэтому длина периода ограничена
+    public List<DailySignups> getSignupsPerDay(LocalDate from, LocalDate to) {
+        if (log.isTraceEnabled()) {
+            log.trace("Регистрации по дням с {} по {}", from, to);
+        }
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Период регистраций задан неверно: " + from + " - " + to);
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_SIGNUP_DAYS) {
+            throw new IllegalArgumentException("Период регистраций не может быть длиннее " + MAX_SIGNUP_DAYS + " дней");
+        }
+        return userDao.signupsPerDay(from, to);
+    }
+
+    /**
+     * Записывает все поля пользователя, null в том числе (например, сбрасывает возраст).
+     * Идет через modifyUser: при параллельном изменении запись повторяется по свежей версии.
+     */
     public User updateUser(Long id, String name, String email, Integer age) {
-        log.info("Обновление пользователя ID: {}", id);
+        log.debug("Обновление пользователя ID: {}", id);
+        return modifyUser(id, user -> {
+            user.setName(name);
+            user.setEmail(email);
+            user.setAge(age);
+        });
+    }
 
-        Optional<User> optionalUser = userDao.findById(id);
-        if (optionalUser.isEmpty()) {
+    /**
+     * Частичное обновление одним UPDATE без загрузки пользователя: null означает "не менять".
+     */
+    public void patchUser(Long id, String name, String email, Integer age) {
+        log.debug("Частичное обновление пользователя ID: {}", id);
+        if (userDao.updateById(id, name, email, age) == 0) {
             log.warn("Пользователь с ID {} не найден", id);
             throw new RuntimeException("Пользователь не найден");
         }
+    }
 
-        User user = optionalUser.get();
-        user.setName(name);
-        user.setEmail(email);
-        user.setAge(age);
+    /**
+     * Чтение, изменение и запись пользователя с оптимистической блокировкой вместо SELECT ... FOR UPDATE.
+     * Если запись изменили параллельно, пользователь перечитывается и modification применяется заново
+     * после случайной паузы (до MAX_UPDATE_ATTEMPTS попыток), поэтому modification должна зависеть
+     * только от переданного объекта. Вызывается вне transactionTemplate: повтор внутри откатанной
+     * транзакции невозможен.
+     */
+    public User modifyUser(Long id, Consumer<User> modification) {
+        log.debug("Изменение пользователя ID: {}", id);
+        for (int attempt = 1; ; attempt++) {
+            User user = userDao.findById(id).orElseThrow(() -> {
+                log.warn("Пользователь с ID {} не найден", id);
+                return new RuntimeException("Пользователь не найден");
+            });
+            modification.accept(user);
+            try {
+                return userDao.update(user);
+            } catch (OptimisticLockConflictException e) {
+                if (attempt == MAX_UPDATE_ATTEMPTS) {
+                    log.warn("Пользователь ID {} не обновлен: конфликт версий в {} попытках", id, attempt);
+                    throw e;
+                }
+                log.debug("Конфликт версий при обновлении пользователя ID {}, попытка {}", id, attempt);
+                backOff(attempt);
+            }
+        }
+    }
 
-        return userDao.update(user);
+    public boolean deleteUser(Long id) {
+        log.debug("Удаление пользователя ID: {}", id);
+        return userDao.deleteById(id) > 0;
     }
 
-    public void deleteUser(Long id) {
-        log.info("Удаление пользователя ID: {}", id);
-        userDao.delete(id);
+    // Случайная пауза разводит повторы конкурирующих потоков, чтобы они не столкнулись снова
+    private static void backOff(int attempt) {
+        long bound = Math.min(UPDATE_BACKOFF_MAX_MS, UPDATE_BACKOFF_BASE_MS << attempt);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Обновление пользователя прервано", e);
+        }
+    }
+
+    private static void checkPageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.example.util;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Общий реестр метрик приложения (Micrometer, экспорт в JMX, домен "metrics")
+ * и публикация статистики Hibernate как MBean com.example:type=HibernateStatistics.
+ */
+@Log4j2
+public final class AppMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private static final MeterRegistry REGISTRY = new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
+
+    private static final Timer SESSION_OPEN = latencyTimer("hibernate.session.open")
+            .description("Время открытия сессии Hibernate")
+            .register(REGISTRY);
+
+    private static final Timer TRANSACTION_COMMIT = latencyTimer("hibernate.transaction.commit")
+            .description("Время коммита транзакции")
+            .register(REGISTRY);
+
+    private static final ObjectName HIBERNATE_STATISTICS = objectName("com.example:type=HibernateStatistics");
+
+    private AppMetrics() {
+    }
+
+    public static MeterRegistry registry() {
+        return REGISTRY;
+    }
+
+    public static Timer sessionOpenTimer() {
+        return SESSION_OPEN;
+    }
+
+    public static Timer transactionCommitTimer() {
+        return TRANSACTION_COMMIT;
+    }
+
+    // Таймер с перцентилями p50/p99/p999; число вызовов в нем же дает пропускную способность
+    public static Timer.Builder latencyTimer(String name) {
+        return Timer.builder(name).publishPercentiles(PERCENTILES);
+    }
+
+    // Публикует Statistics новой фабрики в JMX (заменяя предыдущую) и датчики ее пула соединений
+    static void bind(SessionFactory sessionFactory, String poolName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(HIBERNATE_STATISTICS)) {
+                server.unregisterMBean(HIBERNATE_STATISTICS);
+            }
+            server.registerMBean(new StandardMBean(sessionFactory.getStatistics(), Statistics.class),
+                    HIBERNATE_STATISTICS);
+        } catch (JMException e) {
+            log.warn("Не удалось опубликовать статистику Hibernate в JMX: {}", e.getMessage());
+        }
+        bindPool(poolName);
+    }
+
+    // Датчики пула соединений (для реплик - без статистики Hibernate)
+    static void bindPool(String poolName) {
+        poolGauge("hikari.connections.active", poolName, ConnectionPoolMetrics.Snapshot::activeConnections);
+        poolGauge("hikari.connections.idle", poolName, ConnectionPoolMetrics.Snapshot::idleConnections);
+        poolGauge("hikari.connections.pending", poolName, ConnectionPoolMetrics.Snapshot::threadsAwaitingConnection);
+        poolGauge("hikari.connections.acquire.avg.micros", poolName, ConnectionPoolMetrics.Snapshot::averageAcquireMicros);
+        poolGauge("hikari.connections.acquire.max.micros", poolName, ConnectionPoolMetrics.Snapshot::maxAcquireMicros);
+        poolGauge("hikari.connections.timeouts", poolName, ConnectionPoolMetrics.Snapshot::connectionTimeouts);
+    }
+
+    private static void poolGauge(String name, String poolName, ToDoubleFunction<ConnectionPoolMetrics.Snapshot> value) {
+        // Датчик регистрируется один раз на пул и переживает пересоздание фабрики
+        Gauge.builder(name, ConnectionPoolMetrics.forPool(poolName), metrics -> value.applyAsDouble(metrics.snapshot()))
+                .tag("pool", poolName)
+                .register(REGISTRY);
+    }
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.util;
+
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики пула соединений HikariCP: время ожидания соединения, использование,
+ * таймауты и текущее число активных/свободных соединений. Заполняются через
+ * PoolMetricsTrackerFactory, по одному экземпляру на пул.
+ */
+public class ConnectionPoolMetrics {
+
+    private static final Map<String, ConnectionPoolMetrics> POOLS = new ConcurrentHashMap<>();
+
+    private final String poolName;
+    private volatile PoolStats poolStats;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+
+    private ConnectionPoolMetrics(String poolName) {
+        this.poolName = poolName;
+    }
+
+    public static ConnectionPoolMetrics forPool(String poolName) {
+        return POOLS.computeIfAbsent(poolName, ConnectionPoolMetrics::new);
+    }
+
+    public static Map<String, ConnectionPoolMetrics> all() {
+        return Map.copyOf(POOLS);
+    }
+
+    void bind(PoolStats poolStats) {
+        this.poolStats = poolStats;
+    }
+
+    void recordAcquired(long elapsedNanos) {
+        acquisitions.increment();
+        acquireNanos.add(elapsedNanos);
+        maxAcquireNanos.accumulate(elapsedNanos);
+    }
+
+    void recordUsage(long elapsedMillis) {
+        usageMillis.add(elapsedMillis);
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    void recordCreated() {
+        connectionsCreated.increment();
+    }
+
+    public Snapshot snapshot() {
+        PoolStats stats = poolStats;
+        long count = acquisitions.sum();
+        return new Snapshot(
+                poolName,
+                stats != null ? stats.getActiveConnections() : 0,
+                stats != null ? stats.getIdleConnections() : 0,
+                stats != null ? stats.getTotalConnections() : 0,
+                stats != null ? stats.getPendingThreads() : 0,
+                count,
+                count > 0 ? TimeUnit.NANOSECONDS.toMicros(acquireNanos.sum() / count) : 0,
+                TimeUnit.NANOSECONDS.toMicros(maxAcquireNanos.get()),
+                count > 0 ? usageMillis.sum() / count : 0,
+                timeouts.sum(),
+                connectionsCreated.sum());
+    }
+
+    /**
+     * Срез метрик пула на момент вызова.
+     */
+    public record Snapshot(String poolName,
+                           int activeConnections,
+                           int idleConnections,
+                           int totalConnections,
+                           int threadsAwaitingConnection,
+                           long acquisitions,
+                           long averageAcquireMicros,
+                           long maxAcquireMicros,
+                           long averageUsageMillis,
+                           long connectionTimeouts,
+                           long connectionsCreated) {
+    }
+}
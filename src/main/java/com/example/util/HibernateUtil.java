@@ -1,41 +1,349 @@
 package com.example.util;
 
+import com.example.entity.ShardedSequenceGenerator;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 @Log4j2
 public class HibernateUtil {
 
-    private static SessionFactory sessionFactory;
+    private static final String POOL_MAX_SIZE_PROPERTY = "hibernate.hikari.maximumPoolSize";
+    private static final String POOL_NAME_PROPERTY = "hibernate.hikari.poolName";
+    private static final String POOL_MIN_IDLE_PROPERTY = "hibernate.hikari.minimumIdle";
+    private static final String HBM2DDL_PROPERTY = "hibernate.hbm2ddl.auto";
+    private static final String REPLICA_URLS_PROPERTY = "hibernate.replica.urls";
+    private static final String REPLICA_ROUTING_PROPERTY = "hibernate.replica.routing";
+    private static final String REPLICA_READ_AFTER_WRITE_PROPERTY = "hibernate.replica.read_after_write_ms";
+    static final String SHARD_URLS_PROPERTY = "hibernate.shard.urls";
+    private static final int DEFAULT_POOL_MAX_SIZE = 20;
 
-    private static SessionFactory buildSessionFactory() {
-        try {
-            StandardServiceRegistry standardRegistry = new StandardServiceRegistryBuilder()
-                    .configure("hibernate.cfg.xml")
-                    .build();
+    // Переменные окружения, которыми можно настроить подключение без правки hibernate.cfg.xml
+    private static final Map<String, String> ENVIRONMENT_SETTINGS = Map.of(
+            "DB_URL", "hibernate.connection.url",
+            "DB_USERNAME", "hibernate.connection.username",
+            "DB_PASSWORD", "hibernate.connection.password",
+            "DB_POOL_MAX_SIZE", POOL_MAX_SIZE_PROPERTY,
+            "DB_POOL_MIN_IDLE", POOL_MIN_IDLE_PROPERTY,
+            "DB_POOL_CONNECTION_TIMEOUT_MS", "hibernate.hikari.connectionTimeout",
+            "DB_REPLICA_URLS", REPLICA_URLS_PROPERTY,
+            "DB_SHARD_URLS", SHARD_URLS_PROPERTY);
+
+    // volatile: готовая фабрика публикуется потокам без захвата монитора HibernateUtil
+    private static volatile SessionFactory sessionFactory;
+
+    // Выбор реплики для чтения; строится вместе с основной фабрикой
+    private static volatile ReplicaRouter replicaRouter;
+
+    // Фабрики шардов (ShardedUserDao); строятся при первом обращении
+    private static volatile List<SessionFactory> shardFactories;
 
-            Metadata metadata = new MetadataSources(standardRegistry)
-                    .addAnnotatedClass(com.example.entity.User.class)
-                    .getMetadataBuilder()
-                    .build();
+    // Выполняются в shutdown() до закрытия фабрики, в порядке регистрации
+    private static final List<Runnable> SHUTDOWN_ACTIONS = new CopyOnWriteArrayList<>();
 
-            return metadata.getSessionFactoryBuilder().build();
+    private static SessionFactory buildSessionFactory() {
+        try {
+            SessionFactory factory = buildFactory(configuredRegistry(), "SessionFactory");
+            AppMetrics.bind(factory, poolName(factory));
+            return factory;
         } catch (Exception e) {
             log.error("Ошибка создания SessionFactory: {}", e.getMessage(), e);
             throw new ExceptionInInitializerError(e);
         }
     }
 
-    // Измененный метод - теперь создает фабрику при необходимости
-    public static synchronized SessionFactory getSessionFactory() {
-        if (sessionFactory == null || sessionFactory.isClosed()) {
-            sessionFactory = buildSessionFactory();
+    private static SessionFactory buildFactory(StandardServiceRegistryBuilder registryBuilder, String label) {
+        long start = System.nanoTime();
+        StandardServiceRegistry standardRegistry = registryBuilder.build();
+        long registryBuilt = System.nanoTime();
+
+        Metadata metadata = new MetadataSources(standardRegistry)
+                .addAnnotatedClass(com.example.entity.User.class)
+                .getMetadataBuilder()
+                .build();
+        long metadataBuilt = System.nanoTime();
+
+        SessionFactory factory = metadata.getSessionFactoryBuilder().build();
+        long factoryBuilt = System.nanoTime();
+        Timer.builder("hibernate.sessionfactory.build").tag("pool", poolName(factory)).register(AppMetrics.registry())
+                .record(factoryBuilt - start, TimeUnit.NANOSECONDS);
+        log.info("{} построена за {} мс (реестр {} мс, метаданные {} мс, фабрика {} мс, hbm2ddl.auto={})", label,
+                TimeUnit.NANOSECONDS.toMillis(factoryBuilt - start),
+                TimeUnit.NANOSECONDS.toMillis(registryBuilt - start),
+                TimeUnit.NANOSECONDS.toMillis(metadataBuilt - registryBuilt),
+                TimeUnit.NANOSECONDS.toMillis(factoryBuilt - metadataBuilt),
+                factory.getProperties().getOrDefault(HBM2DDL_PROPERTY, "none"));
+        return factory;
+    }
+
+    // Реплики из hibernate.replica.urls (DB_REPLICA_URLS, через запятую): тот же маппинг и учетные данные,
+    // свой пул, без hbm2ddl и без кэша второго уровня - кэш остается у primary и не заполняется
+    // данными отстающей реплики. Недоступная при старте реплика пропускается
+    private static ReplicaRouter buildReplicaRouter() {
+        Map<String, Object> settings = configuredSettings();
+        List<SessionFactory> replicas = new ArrayList<>();
+        String urls = setting(settings, REPLICA_URLS_PROPERTY, "");
+        for (String url : urls.split(",")) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String poolName = "users-replica-" + (replicas.size() + 1);
+            try {
+                replicas.add(buildFactory(configuredRegistry()
+                        .applySetting("hibernate.connection.url", url.trim())
+                        .applySetting(POOL_NAME_PROPERTY, poolName)
+                        .applySetting("hibernate.cache.use_second_level_cache", "false")
+                        .applySetting(HBM2DDL_PROPERTY, "none"), "Фабрика реплики " + poolName));
+                AppMetrics.bindPool(poolName);
+            } catch (RuntimeException e) {
+                log.error("Реплика {} недоступна, чтение идет без нее: {}", url.trim(), e.getMessage(), e);
+            }
+        }
+        ReplicaRouter.Policy policy;
+        Duration window;
+        try {
+            policy = ReplicaRouter.Policy.parse(setting(settings, REPLICA_ROUTING_PROPERTY, "round-robin"));
+            window = Duration.ofMillis(Long.parseLong(setting(settings, REPLICA_READ_AFTER_WRITE_PROPERTY, "1000")));
+        } catch (RuntimeException e) {
+            replicas.forEach(SessionFactory::close);
+            throw e;
+        }
+        if (!replicas.isEmpty()) {
+            log.info("Чтение через реплики: {}, политика {}, чтение после записи с primary {} мс",
+                    replicas.size(), policy, window.toMillis());
+        }
+        return new ReplicaRouter(HibernateUtil::getSessionFactory, replicas, policy, window,
+                factory -> ConnectionPoolMetrics.forPool(poolName(factory)).snapshot().activeConnections(),
+                System::nanoTime);
+    }
+
+    // Шард - отдельная база со своим пулом и последовательностью; номер шарда (позиция URL в списке)
+    // попадает в генерируемые id. Кэш второго уровня выключен: регионы общие для всех фабрик процесса
+    private static List<SessionFactory> buildShardFactories() {
+        List<String> urls = shardUrls(configuredSettings());
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("Не заданы шарды: DB_SHARD_URLS или " + SHARD_URLS_PROPERTY);
+        }
+        List<SessionFactory> shards = new ArrayList<>(urls.size());
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                String poolName = "users-shard-" + i;
+                shards.add(buildFactory(configuredRegistry()
+                        .applySetting("hibernate.connection.url", urls.get(i))
+                        .applySetting(POOL_NAME_PROPERTY, poolName)
+                        .applySetting(ShardedSequenceGenerator.SHARD_INDEX_PROPERTY, String.valueOf(i))
+                        .applySetting("hibernate.cache.use_second_level_cache", "false"), "Фабрика шарда " + poolName));
+                AppMetrics.bindPool(poolName);
+            }
+            return List.copyOf(shards);
+        } catch (RuntimeException e) {
+            shards.forEach(SessionFactory::close);
+            log.error("Ошибка создания фабрик шардов: {}", e.getMessage(), e);
+            throw new RuntimeException("Ошибка подключения к шардам", e);
+        }
+    }
+
+    static List<String> shardUrls(Map<String, Object> settings) {
+        List<String> urls = new ArrayList<>();
+        for (String url : setting(settings, SHARD_URLS_PROPERTY, "").split(",")) {
+            if (!url.isBlank()) {
+                urls.add(url.trim());
+            }
         }
-        return sessionFactory;
+        return urls;
+    }
+
+    private static String setting(Map<String, Object> settings, String name, String defaultValue) {
+        Object value = settings.get(name);
+        return value != null ? value.toString().trim() : defaultValue;
+    }
+
+    private static String poolName(SessionFactory factory) {
+        return String.valueOf(factory.getProperties().get(POOL_NAME_PROPERTY));
+    }
+
+    private static StandardServiceRegistryBuilder configuredRegistry() {
+        return new StandardServiceRegistryBuilder()
+                .configure("hibernate.cfg.xml")
+                .applySettings(settingsOverrides());
+    }
+
+    // Итоговые настройки (cfg.xml + переопределения) без сборки фабрики: нужны миграциям схемы
+    // Реестр строится только ради ConfigurationService: сервисы с подключениями создаются лениво
+    static Map<String, Object> configuredSettings() {
+        StandardServiceRegistry registry = configuredRegistry().build();
+        try {
+            Map<?, ?> configured = registry.getService(ConfigurationService.class).getSettings();
+            Map<String, Object> settings = new HashMap<>();
+            configured.forEach((name, value) -> settings.put(String.valueOf(name), value));
+            return settings;
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    // Приоритет настроек: hibernate.cfg.xml < переменные окружения < системные свойства hibernate.*,
+    // например -Dhibernate.cache.use_second_level_cache=false
+    private static Map<String, String> settingsOverrides() {
+        Map<String, String> overrides = new HashMap<>();
+        ENVIRONMENT_SETTINGS.forEach((variable, setting) -> {
+            String value = System.getenv(variable);
+            if (value != null && !value.isBlank()) {
+                overrides.put(setting, value);
+            }
+        });
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("hibernate.")) {
+                overrides.put(name, System.getProperty(name));
+            }
+        }
+        return overrides;
+    }
+
+    // Быстрый путь без блокировок; монитор берется только при первой сборке
+    // или пересборке закрытой фабрики (double-checked locking)
+    public static SessionFactory getSessionFactory() {
+        SessionFactory factory = sessionFactory;
+        if (factory != null && !factory.isClosed()) {
+            return factory;
+        }
+        synchronized (HibernateUtil.class) {
+            factory = sessionFactory;
+            if (factory == null || factory.isClosed()) {
+                factory = buildSessionFactory();
+                ReplicaRouter router;
+                try {
+                    router = buildReplicaRouter();
+                } catch (RuntimeException e) {
+                    factory.close();
+                    throw e;
+                }
+                // Фабрика и роутер публикуются вместе; реплики прежнего роутера (фабрику закрыли
+                // снаружи) закрываются, иначе их пулы остаются открытыми
+                ReplicaRouter previous = replicaRouter;
+                replicaRouter = router;
+                sessionFactory = factory;
+                closeReplicas(previous);
+            }
+            return factory;
+        }
+    }
+
+    /**
+     * Фабрика для чтения вне транзакции: реплика по политике hibernate.replica.routing
+     * (round-robin или least-loaded) либо primary, если реплик нет или текущий поток
+     * писал в последние hibernate.replica.read_after_write_ms.
+     */
+    public static SessionFactory getReadSessionFactory() {
+        SessionFactory primary = getSessionFactory();
+        ReplicaRouter router = replicaRouter;
+        return router != null ? router.route() : primary;
+    }
+
+    /**
+     * Фабрики шардов из hibernate.shard.urls (DB_SHARD_URLS, через запятую). Номер шарда -
+     * позиция URL в списке, он кодируется в id, поэтому порядок URL после первой записи не меняется.
+     */
+    public static List<SessionFactory> getShardSessionFactories() {
+        List<SessionFactory> shards = shardFactories;
+        if (shards != null) {
+            return shards;
+        }
+        synchronized (HibernateUtil.class) {
+            if (shardFactories == null) {
+                shardFactories = buildShardFactories();
+            }
+            return shardFactories;
+        }
+    }
+
+    // Отмечает запись текущего потока: следующие чтения в пределах окна идут на primary
+    public static void recordWrite() {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            router.recordWrite();
+        }
+    }
+
+    // Окно чтения после записи текущего потока (null - не писал или реплик нет);
+    // переносится в поток задачи через restoreLastWrite
+    public static Long lastWrite() {
+        ReplicaRouter router = replicaRouter;
+        return router != null ? router.lastWrite() : null;
+    }
+
+    public static void restoreLastWrite(Long writtenAt) {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            router.restoreLastWrite(writtenAt);
+        }
+    }
+
+    /**
+     * Строит фабрику в фоновом потоке и сразу открывает minimumIdle соединений пула,
+     * чтобы первый запрос после старта не ждал ни разбора маппингов, ни подключения к БД.
+     * Вызовы getSessionFactory() до окончания сборки дождутся этой же фабрики.
+     */
+    public static CompletableFuture<SessionFactory> initAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            SessionFactory factory = getSessionFactory();
+            warmUpPool(factory);
+            ReplicaRouter router = replicaRouter;
+            if (router != null) {
+                router.replicas().forEach(HibernateUtil::warmUpPool);
+            }
+            return factory;
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "hibernate-init");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    // Hikari добирает minimumIdle соединений в фоне постепенно; здесь они открываются сразу
+    private static void warmUpPool(SessionFactory factory) {
+        Object minimumIdle = factory.getProperties().get(POOL_MIN_IDLE_PROPERTY);
+        int count = minimumIdle != null ? Integer.parseInt(minimumIdle.toString().trim()) : 1;
+        ConnectionProvider provider = factory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(ConnectionProvider.class);
+        long start = System.nanoTime();
+        List<Connection> connections = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                connections.add(provider.getConnection());
+            }
+        } catch (SQLException e) {
+            log.warn("Не удалось заранее открыть соединения пула: {}", e.getMessage());
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    provider.closeConnection(connection);
+                } catch (SQLException e) {
+                    log.warn("Ошибка возврата соединения в пул: {}", e.getMessage());
+                }
+            }
+        }
+        log.info("Пул соединений {} прогрет: {} соединений за {} мс", poolName(factory),
+                connections.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
     // Новый метод для тестов - позволяет пересоздать SessionFactory
@@ -44,12 +352,76 @@ public class HibernateUtil {
             sessionFactory.close();
         }
         sessionFactory = null;
+        closeReplicasAndShards();
+    }
+
+    // Для тестов - подставляет готовую фабрику без обращения к БД
+    static synchronized void setSessionFactory(SessionFactory factory) {
+        sessionFactory = factory;
+    }
+
+    // Максимальный размер пула соединений из конфигурации
+    public static int getConnectionPoolSize() {
+        return getConnectionPoolSize(getSessionFactory());
+    }
+
+    // Максимальный размер пула соединений фабрики (например, шарда)
+    public static int getConnectionPoolSize(SessionFactory factory) {
+        Object maxSize = factory.getProperties().get(POOL_MAX_SIZE_PROPERTY);
+        return maxSize != null ? Integer.parseInt(maxSize.toString().trim()) : DEFAULT_POOL_MAX_SIZE;
+    }
+
+    // Метрики основного пула соединений: ожидание соединения, активные и свободные соединения
+    public static ConnectionPoolMetrics.Snapshot getConnectionPoolMetrics() {
+        Object poolName = getSessionFactory().getProperties().get(POOL_NAME_PROPERTY);
+        return ConnectionPoolMetrics.forPool(String.valueOf(poolName)).snapshot();
+    }
+
+    // Статистика Hibernate: запросы, загрузки сущностей, попадания и промахи кэша
+    // (регионы "users" и "users-natural-id")
+    public static Statistics getStatistics() {
+        return getSessionFactory().getStatistics();
+    }
+
+    // Регистрирует действие, которое нужно выполнить перед закрытием фабрики (например, сброс отложенных записей)
+    public static void addShutdownAction(Runnable action) {
+        SHUTDOWN_ACTIONS.add(action);
+    }
+
+    public static void removeShutdownAction(Runnable action) {
+        SHUTDOWN_ACTIONS.remove(action);
     }
 
     public static void shutdown() {
-        if (sessionFactory != null && !sessionFactory.isClosed()) {
-            sessionFactory.close();
+        for (Runnable action : SHUTDOWN_ACTIONS) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.error("Ошибка при выполнении действия перед закрытием SessionFactory: {}", e.getMessage(), e);
+            }
+        }
+        SessionFactory factory = sessionFactory;
+        if (factory != null && !factory.isClosed()) {
+            factory.close();
             log.info("SessionFactory закрыта");
         }
+        closeReplicasAndShards();
+    }
+
+    private static synchronized void closeReplicasAndShards() {
+        ReplicaRouter router = replicaRouter;
+        replicaRouter = null;
+        closeReplicas(router);
+        List<SessionFactory> shards = shardFactories;
+        shardFactories = null;
+        if (shards != null) {
+            shards.stream().filter(shard -> !shard.isClosed()).forEach(SessionFactory::close);
+        }
+    }
+
+    private static void closeReplicas(ReplicaRouter router) {
+        if (router != null) {
+            router.replicas().stream().filter(replica -> !replica.isClosed()).forEach(SessionFactory::close);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.example.util;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Подключается к HikariCP через hibernate.hikari.metricsTrackerFactory
+ * и пишет события пула в ConnectionPoolMetrics.
+ */
+public class PoolMetricsTrackerFactory implements MetricsTrackerFactory {
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        ConnectionPoolMetrics metrics = ConnectionPoolMetrics.forPool(poolName);
+        metrics.bind(poolStats);
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                metrics.recordCreated();
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                metrics.recordAcquired(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                metrics.recordUsage(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                metrics.recordTimeout();
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.util;
+
+import org.hibernate.SessionFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Выбор фабрики сессий для чтения: одна из реплик (по кругу или наименее загруженная
+ * по числу активных соединений пула) либо primary. Поток, который недавно писал, читает
+ * с primary в течение readAfterWriteWindow, чтобы увидеть свою запись несмотря на отставание реплик.
+ * Окно привязано к потоку: если запись и следующее чтение одного вызывающего идут в разных потоках
+ * (пулы, виртуальные потоки), код, передающий работу, переносит окно через lastWrite()
+ * и restoreLastWrite() - так делает AsyncUserService. Иначе чтение может попасть на отстающую реплику.
+ */
+public class ReplicaRouter {
+
+    public enum Policy {
+        ROUND_ROBIN,
+        LEAST_LOADED;
+
+        // round-robin, least-loaded (регистр и разделитель не важны)
+        static Policy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final Supplier<SessionFactory> primary;
+    private final List<SessionFactory> replicas;
+    private final Policy policy;
+    private final long readAfterWriteNanos;
+    private final ToIntFunction<SessionFactory> activeConnections;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger next = new AtomicInteger();
+    // Время последней записи потока по nanoClock
+    private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+
+    ReplicaRouter(Supplier<SessionFactory> primary, List<SessionFactory> replicas, Policy policy,
+                  Duration readAfterWriteWindow, ToIntFunction<SessionFactory> activeConnections,
+                  LongSupplier nanoClock) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.policy = policy;
+        this.readAfterWriteNanos = readAfterWriteWindow.toNanos();
+        this.activeConnections = activeConnections;
+        this.nanoClock = nanoClock;
+    }
+
+    public SessionFactory route() {
+        if (replicas.isEmpty() || wroteRecently()) {
+            return primary.get();
+        }
+        if (policy == Policy.LEAST_LOADED) {
+            SessionFactory best = null;
+            int bestLoad = Integer.MAX_VALUE;
+            // Обход начинается со следующей по кругу реплики: при равной нагрузке запросы не липнут к первой
+            int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                SessionFactory replica = replicas.get((start + i) % replicas.size());
+                int load = activeConnections.applyAsInt(replica);
+                if (load < bestLoad) {
+                    best = replica;
+                    bestLoad = load;
+                }
+            }
+            return best;
+        }
+        return replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+    }
+
+    public void recordWrite() {
+        if (!replicas.isEmpty()) {
+            lastWrite.set(nanoClock.getAsLong());
+        }
+    }
+
+    // Время последней записи текущего потока по nanoClock или null
+    public Long lastWrite() {
+        return lastWrite.get();
+    }
+
+    // Переносит окно чтения после записи в текущий поток (например, в задачу пула); null - сбрасывает
+    public void restoreLastWrite(Long writtenAt) {
+        if (writtenAt == null || replicas.isEmpty()) {
+            lastWrite.remove();
+        } else {
+            lastWrite.set(writtenAt);
+        }
+    }
+
+    public List<SessionFactory> replicas() {
+        return replicas;
+    }
+
+    private boolean wroteRecently() {
+        Long writtenAt = lastWrite.get();
+        if (writtenAt == null) {
+            return false;
+        }
+        if (nanoClock.getAsLong() - writtenAt < readAfterWriteNanos) {
+            return true;
+        }
+        lastWrite.remove();
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.util;
+
+import lombok.extern.log4j.Log4j2;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+
+import java.util.Map;
+
+/**
+ * Миграции схемы БД (Flyway, скрипты в classpath:db/migration).
+ * Выполняются отдельным шагом при развертывании (Main migrate), а не при каждом старте приложения:
+ * hibernate.hbm2ddl.auto по умолчанию none и схему не проверяет и не меняет.
+ * Подключение берется из тех же настроек, что и у SessionFactory (cfg.xml, DB_*, -Dhibernate.*);
+ * шарды из hibernate.shard.urls мигрируют тем же набором скриптов.
+ */
+@Log4j2
+public class SchemaMigration {
+
+    private static final String LOCATION = "classpath:db/migration";
+
+    private SchemaMigration() {
+    }
+
+    // Основная база и все шарды (hibernate.shard.urls); результат - по основной базе
+    public static MigrateResult migrate() {
+        Map<String, Object> settings = HibernateUtil.configuredSettings();
+        MigrateResult result = migrate(settings, setting(settings, "hibernate.connection.url"));
+        for (String shardUrl : HibernateUtil.shardUrls(settings)) {
+            migrate(settings, shardUrl);
+        }
+        return result;
+    }
+
+    private static MigrateResult migrate(Map<String, Object> settings, String url) {
+        Flyway flyway = Flyway.configure()
+                .dataSource(url,
+                        setting(settings, "hibernate.connection.username"),
+                        setting(settings, "hibernate.connection.password"))
+                .locations(LOCATION)
+                // Базы, схему которых раньше создавал hbm2ddl, принимаются за версию 1
+                .baselineOnMigrate(true)
+                // Блокировка миграций без открытой транзакции: иначе CREATE INDEX CONCURRENTLY
+                // ждет завершения транзакции самого Flyway
+                .configuration(Map.of("flyway.postgresql.transactional.lock", "false"))
+                .load();
+        try {
+            MigrateResult result = flyway.migrate();
+            log.info("Миграции схемы применены к {}: {} (версия схемы {})",
+                    url, result.migrationsExecuted, result.targetSchemaVersion);
+            return result;
+        } catch (RuntimeException e) {
+            log.error("Ошибка миграции схемы {}: {}", url, e.getMessage(), e);
+            throw new RuntimeException("Ошибка миграции схемы", e);
+        }
+    }
+
+    private static String setting(Map<String, Object> settings, String name) {
+        Object value = settings.get(name);
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.util;
+
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Единица работы: выполняет несколько вызовов DAO в одной сессии и одной транзакции.
+ * Сессия берется через getCurrentSession() (current_session_context_class=thread),
+ * поэтому DAO внутри execute() видят ее и не открывают собственные сессии и транзакции.
+ * Вложенный execute() той же фабрики присоединяется к внешней транзакции, другой фабрики -
+ * открывает свою, и внешняя при этом остается активной.
+ */
+@Log4j2
+public class TransactionTemplate {
+
+    // Фабрики, для которых в текущем потоке открыта единица работы (вложенные execute разных баз)
+    private static final ThreadLocal<Set<SessionFactory>> ACTIVE = new ThreadLocal<>();
+
+    private static final TransactionTemplate NONE = new TransactionTemplate(null);
+
+    private final Supplier<SessionFactory> sessionFactory;
+
+    public TransactionTemplate() {
+        this(HibernateUtil::getSessionFactory);
+    }
+
+    public TransactionTemplate(Supplier<SessionFactory> sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Шаблон без общей транзакции: work выполняется как есть, и каждый вызов DAO внутри
+     * идет в собственной транзакции. Для DAO поверх нескольких баз (шардов), где одной транзакции нет.
+     */
+    public static TransactionTemplate none() {
+        return NONE;
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        if (sessionFactory == null) {
+            return work.get();
+        }
+        SessionFactory factory = sessionFactory.get();
+        if (isActive(factory)) {
+            return work.get();
+        }
+
+        Session session = AppMetrics.sessionOpenTimer().record(factory::getCurrentSession);
+        Transaction transaction = session.beginTransaction();
+        Set<SessionFactory> active = ACTIVE.get();
+        if (active == null) {
+            active = Collections.newSetFromMap(new IdentityHashMap<>());
+            ACTIVE.set(active);
+        }
+        active.add(factory);
+        try {
+            T result = work.get();
+            AppMetrics.transactionCommitTimer().record(transaction::commit);
+            return result;
+        } catch (RuntimeException | Error e) {
+            rollback(transaction, e);
+            throw e;
+        } finally {
+            active.remove(factory);
+            if (active.isEmpty()) {
+                ACTIVE.remove();
+            }
+        }
+    }
+
+    public void executeWithoutResult(Runnable work) {
+        execute(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Выполняет action после фиксации текущей единицы работы этого шаблона; при откате
+     * action не выполняется. Вне единицы работы (или у none()) action выполняется сразу.
+     */
+    public void afterCommit(Runnable action) {
+        SessionFactory factory = sessionFactory != null ? sessionFactory.get() : null;
+        if (factory == null || !isActive(factory)) {
+            action.run();
+            return;
+        }
+        factory.getCurrentSession().getTransaction().registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    // Открыта ли в текущем потоке единица работы для этой фабрики
+    public static boolean isActive(SessionFactory factory) {
+        Set<SessionFactory> active = ACTIVE.get();
+        return active != null && active.contains(factory);
+    }
+
+    private static void rollback(Transaction transaction, Throwable cause) {
+        try {
+            if (transaction.getStatus().canRollback()) {
+                transaction.rollback();
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка при откате транзакции: {}", e.getMessage(), e);
+            cause.addSuppressed(e);
+        }
+    }
+}
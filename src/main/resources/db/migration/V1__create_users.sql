@@ -0,0 +1,15 @@
+-- Схема, которую раньше создавал hibernate.hbm2ddl.auto=update.
+-- Базы, созданные через hbm2ddl, принимаются за версию 1 (baseline) и этот скрипт не выполняют.
+CREATE SEQUENCE users_seq START 1 INCREMENT 50;
+
+CREATE TABLE users (
+    id         BIGINT       NOT NULL,
+    name       VARCHAR(255) NOT NULL,
+    email      VARCHAR(255) NOT NULL,
+    age        INTEGER,
+    created_at TIMESTAMP,
+    CONSTRAINT users_pkey PRIMARY KEY (id),
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+CREATE INDEX idx_users_created_at_id ON users (created_at, id);
@@ -0,0 +1,8 @@
+-- Поиск по подстроке имени и email (UserDao.search): ILIKE '%...%' идет по GIN-индексам триграмм,
+-- а не полным просмотром таблицы. Индексы строятся CONCURRENTLY, без блокировки записи
+-- (поэтому скрипт выполняется вне транзакции, см. .conf). Для CREATE EXTENSION нужны права владельца БД.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_name_trgm ON users USING gin (name gin_trgm_ops);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_email_trgm ON users USING gin (email gin_trgm_ops);
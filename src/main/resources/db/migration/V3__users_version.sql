@@ -0,0 +1,4 @@
+-- Версия строки для оптимистической блокировки (@Version в User): UPDATE идет с условием
+-- WHERE version = прочитанной версии и увеличивает ее. С постоянным DEFAULT столбец
+-- добавляется без перезаписи таблицы, существующие строки получают версию 0.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,15 @@
+-- Последовательность для генератора id (пул по 50, см. User). Базы, созданные через hbm2ddl
+-- с IDENTITY, принимаются за версию 1 и V1 не выполняют, поэтому users_seq в них нет.
+-- Последовательность создается, только если ее нет, и начинается выше max(id): пул Hibernate
+-- выдает id от (значение - 49) до значения, первый пул идет сразу после существующих строк.
+-- Там, где users_seq создала V1, скрипт ничего не меняет.
+DO $$
+DECLARE
+    next_id BIGINT;
+BEGIN
+    IF to_regclass('users_seq') IS NULL THEN
+        SELECT COALESCE(max(id), 0) + 50 INTO next_id FROM users;
+        EXECUTE format('CREATE SEQUENCE users_seq START %s INCREMENT 50', next_id);
+    END IF;
+END
+$$;
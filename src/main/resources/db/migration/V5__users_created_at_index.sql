@@ -0,0 +1,5 @@
+-- Индекс для постраничного чтения по created_at (UserDao.findPageByCreatedAt). Базы, созданные
+-- через hbm2ddl, принимаются за версию 1 и V1 не выполняют, поэтому индекса в них нет; там,
+-- где его создала V1, IF NOT EXISTS ничего не меняет. Строится CONCURRENTLY, без блокировки
+-- записи (поэтому скрипт выполняется вне транзакции, см. .conf).
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_created_at_id ON users (created_at, id);
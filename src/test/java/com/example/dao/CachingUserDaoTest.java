@@ -0,0 +1,167 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingUserDaoTest {
+
+    @Mock
+    private UserDao delegate;
+
+    private CachingUserDao cachingUserDao;
+
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        cachingUserDao = new CachingUserDao(delegate, 100, Duration.ofMinutes(1));
+        testUser = User.builder()
+                .id(1L)
+                .name("Test User")
+                .email("test@example.com")
+                .age(25)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Test
+    void testFindById_SecondCallIsCacheHit() {
+        // Given
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+
+        // When
+        Optional<User> first = cachingUserDao.findById(1L);
+        Optional<User> second = cachingUserDao.findById(1L);
+
+        // Then
+        assertEquals("Test User", first.orElseThrow().getName());
+        assertEquals("Test User", second.orElseThrow().getName());
+        verify(delegate, times(1)).findById(1L);
+        assertEquals(1, cachingUserDao.getIdCacheStats().hitCount());
+        assertEquals(1, cachingUserDao.getIdCacheStats().missCount());
+    }
+
+    @Test
+    void testFindAllByIds_LoadsOnlyMissingIds() {
+        // Given
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+        cachingUserDao.findById(1L);
+        User other = User.builder().id(2L).name("Other").email("other@example.com").age(30).build();
+        when(delegate.findAllByIds(Set.of(2L, 3L))).thenReturn(new UserLookup<>(List.of(other), List.of(3L)));
+
+        // When
+        UserLookup<Long> lookup = cachingUserDao.findAllByIds(List.of(3L, 2L, 1L));
+
+        // Then
+        assertEquals(List.of(2L, 1L), lookup.found().stream().map(User::getId).toList());
+        assertEquals(List.of(3L), lookup.missing());
+        verify(delegate, times(1)).findAllByIds(Set.of(2L, 3L));
+    }
+
+    @Test
+    void testFindById_NotFoundIsNotCached() {
+        // Given
+        when(delegate.findById(999L)).thenReturn(Optional.empty());
+
+        // When
+        cachingUserDao.findById(999L);
+        cachingUserDao.findById(999L);
+
+        // Then
+        verify(delegate, times(2)).findById(999L);
+    }
+
+    @Test
+    void testFindById_ReturnedCopyDoesNotChangeCache() {
+        // Given
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+        cachingUserDao.findById(1L).orElseThrow().setName("Changed outside");
+
+        // When
+        Optional<User> cached = cachingUserDao.findById(1L);
+
+        // Then
+        assertEquals("Test User", cached.orElseThrow().getName());
+    }
+
+    @Test
+    void testFindByEmail_ServedFromCacheAfterFindById() {
+        // Given
+        when(delegate.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        cachingUserDao.findByEmail("test@example.com");
+
+        // When
+        Optional<User> byEmail = cachingUserDao.findByEmail("test@example.com");
+        Optional<User> byId = cachingUserDao.findById(1L);
+
+        // Then
+        assertTrue(byEmail.isPresent());
+        assertTrue(byId.isPresent());
+        verify(delegate, times(1)).findByEmail("test@example.com");
+        verify(delegate, never()).findById(anyLong());
+    }
+
+    @Test
+    void testUpdate_InvalidatesIdAndOldEmail() {
+        // Given
+        when(delegate.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        cachingUserDao.findByEmail("test@example.com");
+        User changed = User.builder().id(1L).name("Test User").email("new@example.com").age(25).build();
+        when(delegate.update(changed)).thenReturn(changed);
+        when(delegate.findById(1L)).thenReturn(Optional.of(changed));
+        when(delegate.findByEmail("test@example.com")).thenReturn(Optional.empty());
+
+        // When
+        cachingUserDao.update(changed);
+
+        // Then
+        assertEquals("new@example.com", cachingUserDao.findById(1L).orElseThrow().getEmail());
+        assertFalse(cachingUserDao.findByEmail("test@example.com").isPresent());
+        verify(delegate, times(1)).findById(1L);
+    }
+
+    @Test
+    void testUpdate_ConflictInvalidatesStaleCopy() {
+        // Given
+        User fresh = User.builder().id(1L).name("Other Writer").email("test@example.com").age(30).version(1L).build();
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser)).thenReturn(Optional.of(fresh));
+        User stale = cachingUserDao.findById(1L).orElseThrow();
+        when(delegate.update(stale)).thenThrow(new OptimisticLockConflictException(1L, null, null));
+
+        // When
+        assertThrows(OptimisticLockConflictException.class, () -> cachingUserDao.update(stale));
+
+        // Then: повтор читает актуальную версию из БД, а не устаревшую копию из кэша
+        assertEquals(1L, cachingUserDao.findById(1L).orElseThrow().getVersion());
+        verify(delegate, times(2)).findById(1L);
+    }
+
+    @Test
+    void testDelete_InvalidatesEntry() {
+        // Given
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser)).thenReturn(Optional.empty());
+        cachingUserDao.findById(1L);
+
+        // When
+        cachingUserDao.delete(1L);
+
+        // Then
+        assertFalse(cachingUserDao.findById(1L).isPresent());
+        verify(delegate, times(1)).delete(1L);
+        verify(delegate, times(2)).findById(1L);
+    }
+}
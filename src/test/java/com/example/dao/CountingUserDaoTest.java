@@ -0,0 +1,161 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import com.example.util.TransactionTemplate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CountingUserDaoTest {
+
+    @Mock
+    private UserDao delegate;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private CountingUserDao countingUserDao;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(delegate.transactionTemplate()).thenReturn(TransactionTemplate.none());
+        countingUserDao = new CountingUserDao(delegate, 10, Duration.ofSeconds(60), clock::get);
+    }
+
+    @Test
+    void testCount_LoadsSnapshotOnce() {
+        // Given
+        when(delegate.count()).thenReturn(5L);
+        when(delegate.countByAgeBucket(10)).thenReturn(List.of(new AgeBucket(20, 30, 3), new AgeBucket(null, null, 2)));
+
+        // When
+        long first = countingUserDao.count();
+        long second = countingUserDao.count();
+        List<AgeBucket> buckets = countingUserDao.countByAgeBucket(10);
+        countingUserDao.countByAgeBucket(10);
+
+        // Then
+        assertEquals(5, first);
+        assertEquals(5, second);
+        assertEquals(List.of(new AgeBucket(20, 30, 3), new AgeBucket(null, null, 2)), buckets);
+        verify(delegate, times(1)).count();
+        verify(delegate, times(1)).countByAgeBucket(10);
+    }
+
+    @Test
+    void testSave_UpdatesSnapshotsInPlace() {
+        // Given
+        when(delegate.count()).thenReturn(3L);
+        when(delegate.countByAgeBucket(10)).thenReturn(List.of(new AgeBucket(20, 30, 3)));
+        User saved = User.builder().id(7L).name("New").email("new@example.com").age(41).build();
+        when(delegate.save(saved)).thenReturn(saved);
+        countingUserDao.count();
+        countingUserDao.countByAgeBucket(10);
+
+        // When
+        countingUserDao.save(saved);
+
+        // Then
+        assertEquals(4, countingUserDao.count());
+        assertEquals(List.of(new AgeBucket(20, 30, 3), new AgeBucket(40, 50, 1)), countingUserDao.countByAgeBucket(10));
+        verify(delegate, times(1)).count();
+        verify(delegate, times(1)).countByAgeBucket(10);
+    }
+
+    @Test
+    void testSave_InsideTransaction_AdjustsOnlyAfterCommit() {
+        // Given
+        TransactionTemplate transaction = mock(TransactionTemplate.class);
+        List<Runnable> onCommit = new ArrayList<>();
+        doAnswer(invocation -> onCommit.add(invocation.getArgument(0))).when(transaction).afterCommit(any());
+        when(delegate.transactionTemplate()).thenReturn(transaction);
+        when(delegate.count()).thenReturn(3L);
+        User saved = User.builder().id(7L).name("New").email("new@example.com").age(41).build();
+        when(delegate.save(saved)).thenReturn(saved);
+        countingUserDao.count();
+
+        // When
+        countingUserDao.save(saved);
+
+        // Then: до фиксации счетчик прежний (при откате так и останется), после - увеличен
+        assertEquals(3, countingUserDao.count());
+        onCommit.forEach(Runnable::run);
+        assertEquals(4, countingUserDao.count());
+        verify(delegate, times(1)).count();
+    }
+
+    @Test
+    void testDeleteById_AdjustsTotalByRowCountWithoutExtraRead() {
+        // Given
+        when(delegate.count()).thenReturn(3L);
+        when(delegate.countByAgeBucket(10))
+                .thenReturn(List.of(new AgeBucket(20, 30, 3)))
+                .thenReturn(List.of(new AgeBucket(20, 30, 2)));
+        when(delegate.deleteById(3L)).thenReturn(1);
+        when(delegate.deleteById(4L)).thenReturn(0);
+        countingUserDao.count();
+        countingUserDao.countByAgeBucket(10);
+
+        // When
+        countingUserDao.deleteById(3L);
+        countingUserDao.deleteById(4L);
+
+        // Then: общий счетчик поправлен по числу строк, корзины возраста перезагружены
+        assertEquals(2, countingUserDao.count());
+        assertEquals(List.of(new AgeBucket(20, 30, 2)), countingUserDao.countByAgeBucket(10));
+        verify(delegate, times(1)).count();
+        verify(delegate, times(2)).countByAgeBucket(10);
+        verify(delegate, never()).findById(anyLong());
+    }
+
+    @Test
+    void testUpsertAll_ReloadsSnapshot() {
+        // Given
+        when(delegate.count()).thenReturn(3L, 8L);
+        countingUserDao.count();
+
+        // When
+        countingUserDao.upsertAll(List.of());
+
+        // Then
+        assertEquals(8, countingUserDao.count());
+        verify(delegate, times(2)).count();
+    }
+
+    @Test
+    void testCount_ReloadsAfterRefreshInterval() {
+        // Given
+        when(delegate.count()).thenReturn(3L, 4L);
+        countingUserDao.count();
+
+        // When
+        clock.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        // Then
+        assertEquals(4, countingUserDao.count());
+    }
+
+    @Test
+    void testCountByAgeBucket_OtherWidth_GoesToDelegate() {
+        // Given
+        List<AgeBucket> buckets = List.of(new AgeBucket(0, 5, 1));
+        when(delegate.countByAgeBucket(5)).thenReturn(buckets);
+
+        // When
+        List<AgeBucket> result = countingUserDao.countByAgeBucket(5);
+
+        // Then
+        assertEquals(buckets, result);
+        verify(delegate, never()).countByAgeBucket(10);
+    }
+}
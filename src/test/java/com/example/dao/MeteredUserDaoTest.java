@@ -0,0 +1,66 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MeteredUserDaoTest {
+
+    @Mock
+    private UserDao delegate;
+
+    private SimpleMeterRegistry registry;
+
+    private MeteredUserDao meteredUserDao;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        meteredUserDao = new MeteredUserDao(delegate, registry);
+    }
+
+    @Test
+    void testFindById_RecordsLatency() {
+        // Given
+        User user = User.builder().id(1L).name("Metered").email("metered@example.com").age(20).build();
+        when(delegate.findById(1L)).thenReturn(Optional.of(user));
+
+        // When
+        meteredUserDao.findById(1L);
+        meteredUserDao.findById(1L);
+
+        // Then
+        Timer timer = registry.get("user.dao").tag("method", "findById").timer();
+        assertEquals(2, timer.count());
+        assertNull(registry.find("user.dao.errors").counter());
+    }
+
+    @Test
+    void testSave_CountsErrors() {
+        // Given
+        User user = User.builder().name("Broken").email("broken@example.com").age(20).build();
+        when(delegate.save(user)).thenThrow(new IllegalStateException("БД недоступна"));
+
+        // When
+        assertThrows(IllegalStateException.class, () -> meteredUserDao.save(user));
+
+        // Then
+        assertEquals(1, registry.get("user.dao").tag("method", "save").timer().count());
+        assertEquals(1.0, registry.get("user.dao.errors")
+                .tag("method", "save")
+                .tag("exception", "IllegalStateException")
+                .counter()
+                .count());
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.dao;
+
+import com.example.entity.ShardedSequenceGenerator;
+import com.example.entity.User;
+import com.example.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ShardedUserDaoTest {
+
+    @Mock
+    private UserDao shard0;
+
+    @Mock
+    private UserDao shard1;
+
+    private ShardedUserDao shardedUserDao;
+
+    @BeforeEach
+    void setUp() {
+        shardedUserDao = new ShardedUserDao(List.of(shard0, shard1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        shardedUserDao.close();
+    }
+
+    @Test
+    void testFindById_RoutesByShardEncodedInId() {
+        // Given
+        long id = ShardedSequenceGenerator.encode(7, 1);
+        User user = user(id, "a@example.com");
+        when(shard1.findById(id)).thenReturn(Optional.of(user));
+
+        // When
+        Optional<User> found = shardedUserDao.findById(id);
+
+        // Then
+        assertSame(user, found.orElseThrow());
+        verifyNoInteractions(shard0);
+    }
+
+    @Test
+    void testFindById_UnknownShard_ReturnsEmpty() {
+        // When
+        Optional<User> found = shardedUserDao.findById(ShardedSequenceGenerator.encode(7, 5));
+
+        // Then
+        assertTrue(found.isEmpty());
+        verifyNoInteractions(shard0, shard1);
+    }
+
+    @Test
+    void testSaveAndFindByEmail_UseSameShard() {
+        // Given
+        String email = "routed@example.com";
+        UserDao target = shardedUserDao.shardOf(email) == 0 ? shard0 : shard1;
+        UserDao other = target == shard0 ? shard1 : shard0;
+        User user = user(null, email);
+
+        // When
+        shardedUserDao.save(user);
+        shardedUserDao.findByEmail(email);
+
+        // Then
+        verify(target).save(user);
+        verify(target).findByEmail(email);
+        verifyNoInteractions(other);
+    }
+
+    @Test
+    void testFindPage_MergesShardsInIdOrder() {
+        // Given
+        User a = user(ShardedSequenceGenerator.encode(1, 0), "a@example.com");
+        User b = user(ShardedSequenceGenerator.encode(2, 1), "b@example.com");
+        User c = user(ShardedSequenceGenerator.encode(3, 0), "c@example.com");
+        User d = user(ShardedSequenceGenerator.encode(4, 1), "d@example.com");
+        when(shard0.findPage(null, 3)).thenReturn(List.of(a, c));
+        when(shard1.findPage(null, 3)).thenReturn(List.of(b, d));
+
+        // When
+        List<User> page = shardedUserDao.findPage(null, 3);
+
+        // Then
+        assertEquals(List.of(a, b, c), page);
+    }
+
+    @Test
+    void testStreamAll_MergesSortedStreamsAndClosesAll() {
+        // Given
+        AtomicInteger closed = new AtomicInteger();
+        User a = user(ShardedSequenceGenerator.encode(1, 0), "a@example.com");
+        User b = user(ShardedSequenceGenerator.encode(2, 1), "b@example.com");
+        User c = user(ShardedSequenceGenerator.encode(3, 0), "c@example.com");
+        when(shard0.streamAll()).thenReturn(Stream.of(a, c).onClose(closed::incrementAndGet));
+        when(shard1.streamAll()).thenReturn(Stream.of(b).onClose(closed::incrementAndGet));
+
+        // When
+        List<Long> ids;
+        try (Stream<User> users = shardedUserDao.streamAll()) {
+            ids = users.map(User::getId).collect(Collectors.toList());
+        }
+
+        // Then
+        assertEquals(List.of(a.getId(), b.getId(), c.getId()), ids);
+        assertEquals(2, closed.get());
+    }
+
+    @Test
+    void testFindAll_ConcurrentCallersFanOutInParallel() {
+        // Given: запрос к шарду завершается, только когда выполняются все четыре запроса двух вызывающих
+        CountDownLatch allRunning = new CountDownLatch(4);
+        List.of(shard0, shard1).forEach(shard -> when(shard.findAll()).thenAnswer(invocation -> {
+            allRunning.countDown();
+            assertTrue(allRunning.await(5, TimeUnit.SECONDS), "запросы к шардам выполнялись по очереди");
+            return List.of();
+        }));
+
+        // When
+        CompletableFuture<List<User>> first = CompletableFuture.supplyAsync(shardedUserDao::findAll);
+        CompletableFuture<List<User>> second = CompletableFuture.supplyAsync(shardedUserDao::findAll);
+
+        // Then
+        assertEquals(List.of(), first.join());
+        assertEquals(List.of(), second.join());
+    }
+
+    @Test
+    void testAggregates_SumAcrossShards() {
+        // Given
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        when(shard0.countByAgeBucket(10)).thenReturn(List.of(new AgeBucket(20, 30, 2), new AgeBucket(null, null, 1)));
+        when(shard1.countByAgeBucket(10)).thenReturn(List.of(new AgeBucket(10, 20, 4), new AgeBucket(20, 30, 3)));
+        when(shard0.signupsPerDay(day, day.plusDays(1)))
+                .thenReturn(List.of(new DailySignups(day, 1), new DailySignups(day.plusDays(1), 0)));
+        when(shard1.signupsPerDay(day, day.plusDays(1)))
+                .thenReturn(List.of(new DailySignups(day, 2), new DailySignups(day.plusDays(1), 5)));
+
+        // When
+        List<AgeBucket> buckets = shardedUserDao.countByAgeBucket(10);
+        List<DailySignups> signups = shardedUserDao.signupsPerDay(day, day.plusDays(1));
+
+        // Then
+        assertEquals(List.of(new AgeBucket(10, 20, 4), new AgeBucket(20, 30, 5), new AgeBucket(null, null, 1)), buckets);
+        assertEquals(List.of(new DailySignups(day, 3), new DailySignups(day.plusDays(1), 5)), signups);
+    }
+
+    @Test
+    void testUserService_CreateUserRunsOnEmailShardWithoutPrimaryTransaction() {
+        // Given
+        String email = "created@example.com";
+        UserDao target = shardedUserDao.shardOf(email) == 0 ? shard0 : shard1;
+        when(target.findByEmail(email)).thenReturn(Optional.empty());
+        when(target.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        User created = new UserService(shardedUserDao).createUser("Created", email, 30);
+
+        // Then: шаблон берется у DAO, поэтому транзакция основной базы не открывается
+        assertEquals(email, created.getEmail());
+        verify(target).save(any(User.class));
+    }
+
+    @Test
+    void testUpdateById_EmailOnOtherShard_IsRejected() {
+        // Given
+        String email = "moved@example.com";
+        int otherShard = 1 - shardedUserDao.shardOf(email);
+        long id = ShardedSequenceGenerator.encode(9, otherShard);
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> shardedUserDao.updateById(id, null, email, null));
+        verifyNoInteractions(shard0, shard1);
+    }
+
+    @Test
+    void testEncode_ShardRoundTrip() {
+        long id = ShardedSequenceGenerator.encode(123_456_789L, 37);
+
+        assertEquals(37, ShardedSequenceGenerator.shardOf(id));
+        assertEquals(123_456_789L, id >>> ShardedSequenceGenerator.SHARD_BITS);
+    }
+
+    private static User user(Long id, String email) {
+        return User.builder().id(id).name("User").email(email).age(30).build();
+    }
+}
@@ -2,16 +2,26 @@ package com.example.dao;
 
 import com.example.entity.User;
 import com.example.util.HibernateUtil;
+import com.example.util.SchemaMigration;
+import com.example.util.TransactionTemplate;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
+import org.hibernate.stat.CacheRegionStatistics;
 import org.junit.jupiter.api.*;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,6 +43,9 @@ class UserDaoIntegrationTest {
         System.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
         System.setProperty("hibernate.connection.username", postgres.getUsername());
         System.setProperty("hibernate.connection.password", postgres.getPassword());
+        // Схему создают миграции, а validate проверяет, что они совпадают с маппингом сущностей
+        SchemaMigration.migrate();
+        System.setProperty("hibernate.hbm2ddl.auto", "validate");
     }
 
     @BeforeEach
@@ -80,6 +93,76 @@ class UserDaoIntegrationTest {
         assertEquals(30, savedUser.getAge());
     }
 
+    @Test
+    void testSaveAll() {
+        // Given
+        List<User> users = IntStream.range(0, 105)
+                .mapToObj(i -> User.builder()
+                        .name("Bulk" + i)
+                        .email("bulk" + i + "@example.com")
+                        .age(20 + i % 50)
+                        .build())
+                .collect(Collectors.toList());
+
+        // When
+        long saved = userDao.saveAll(users);
+
+        // Then
+        assertEquals(105, saved);
+        assertTrue(users.stream().allMatch(user -> user.getId() != null));
+        assertEquals(105, userDao.findAll().size());
+    }
+
+    @Test
+    void testSaveAll_Stream() {
+        // When
+        long saved = userDao.saveAll(Stream.of(
+                User.builder().name("Stream1").email("stream1@example.com").age(21).build(),
+                User.builder().name("Stream2").email("stream2@example.com").age(22).build()));
+
+        // Then
+        assertEquals(2, saved);
+        assertTrue(userDao.findByEmail("stream2@example.com").isPresent());
+    }
+
+    @Test
+    void testUpsertByEmail_InsertsThenUpdates() {
+        // Given
+        User inserted = userDao.upsertByEmail(User.builder().name("Upsert").email("upsert@test.com").age(20).build());
+
+        // When
+        User updated = userDao.upsertByEmail(User.builder().name("Upsert 2").email("upsert@test.com").age(21).build());
+
+        // Then
+        assertNotNull(inserted.getId());
+        assertEquals(inserted.getId(), updated.getId());
+        assertEquals(inserted.getCreatedAt(), updated.getCreatedAt());
+        User found = userDao.findById(inserted.getId()).orElseThrow();
+        assertEquals("Upsert 2", found.getName());
+        assertEquals(21, found.getAge());
+        assertEquals(1, userDao.findAll().size());
+    }
+
+    @Test
+    void testUpsertAll_DoesNotCollideWithSequenceIds() {
+        // Given
+        userDao.save(User.builder().name("Existing").email("sync0@test.com").age(1).build());
+        List<User> users = IntStream.range(0, 45)
+                .mapToObj(i -> User.builder().name("Sync" + i).email("sync" + i + "@test.com").age(30).build())
+                .collect(Collectors.toList());
+
+        // When
+        long sent = userDao.upsertAll(users);
+        userDao.upsertAll(users);
+        User savedAfter = userDao.save(User.builder().name("After").email("after@test.com").age(1).build());
+
+        // Then
+        assertEquals(45, sent);
+        assertEquals(46, userDao.findAll().size());
+        assertEquals("Sync0", userDao.findByEmail("sync0@test.com").orElseThrow().getName());
+        assertNotNull(savedAfter.getId());
+    }
+
     @Test
     void testFindById() {
         // Given
@@ -99,6 +182,70 @@ class UserDaoIntegrationTest {
         assertEquals("Jane Doe", foundUser.get().getName());
     }
 
+    @Test
+    void testFindById_ServedFromSecondLevelCache() {
+        // Given
+        User savedUser = userDao.save(User.builder().name("Cached").email("cached@example.com").age(33).build());
+        CacheRegionStatistics users = HibernateUtil.getStatistics().getDomainDataRegionStatistics("users");
+        long hitsBefore = users.getHitCount();
+
+        // When
+        userDao.findById(savedUser.getId());
+        userDao.findById(savedUser.getId());
+
+        // Then
+        assertTrue(users.getHitCount() >= hitsBefore + 2);
+    }
+
+    @Test
+    void testFindByEmail_AfterEmailChange() {
+        // Given
+        User savedUser = userDao.save(User.builder().name("Mutable").email("before@example.com").age(33).build());
+        userDao.findByEmail("before@example.com");
+
+        // When
+        savedUser.setEmail("after@example.com");
+        userDao.update(savedUser);
+
+        // Then: кэш натурального ключа не отдает устаревшее соответствие
+        assertFalse(userDao.findByEmail("before@example.com").isPresent());
+        assertEquals(savedUser.getId(), userDao.findByEmail("after@example.com").orElseThrow().getId());
+    }
+
+    @Test
+    void testFindAllByIds_RequestOrderAndMissing() {
+        // Given
+        User first = userDao.save(User.builder().name("First").email("first@test.com").age(20).build());
+        User second = userDao.save(User.builder().name("Second").email("second@test.com").age(30).build());
+
+        // When
+        UserLookup<Long> lookup = userDao.findAllByIds(List.of(second.getId(), 999_999L, first.getId(), second.getId()));
+
+        // Then
+        assertEquals(List.of("Second", "First"), lookup.found().stream().map(User::getName).collect(Collectors.toList()));
+        assertEquals(List.of(999_999L), lookup.missing());
+    }
+
+    @Test
+    void testFindAllByEmails_ManyChunks() {
+        // Given
+        userDao.saveAll(IntStream.range(0, 600)
+                .mapToObj(i -> User.builder().name("Bulk" + i).email("bulk" + i + "@test.com").age(30).build())
+                .collect(Collectors.toList()));
+        List<String> emails = IntStream.range(0, 700).map(i -> 699 - i)
+                .mapToObj(i -> "bulk" + i + "@test.com")
+                .collect(Collectors.toList());
+
+        // When
+        UserLookup<String> lookup = userDao.findAllByEmails(emails);
+
+        // Then
+        assertEquals(600, lookup.found().size());
+        assertEquals("Bulk599", lookup.found().get(0).getName());
+        assertEquals(100, lookup.missing().size());
+        assertEquals("bulk699@test.com", lookup.missing().get(0));
+    }
+
     @Test
     void testFindById_NotFound() {
         // When
@@ -130,6 +277,127 @@ class UserDaoIntegrationTest {
         assertTrue(users.isEmpty());
     }
 
+    @Test
+    void testStreamAll() {
+        // Given
+        userDao.saveAll(IntStream.range(0, 2500)
+                .mapToObj(i -> User.builder().name("Stream" + i).email("stream" + i + "@test.com").age(i % 90).build())
+                .collect(Collectors.toList()));
+
+        // When
+        List<Long> ids;
+        try (Stream<User> users = userDao.streamAll()) {
+            ids = users.map(User::getId).collect(Collectors.toList());
+        }
+
+        // Then
+        assertEquals(2500, ids.size());
+        assertEquals(ids.stream().sorted().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void testStreamRange() {
+        // Given
+        userDao.saveAll(IntStream.range(0, 30)
+                .mapToObj(i -> User.builder().name("Range" + i).email("range" + i + "@test.com").age(30).build())
+                .collect(Collectors.toList()));
+        IdRange all = userDao.findIdRange().orElseThrow();
+
+        // When
+        List<User> users = all.split(4).stream()
+                .flatMap(part -> {
+                    try (Stream<User> stream = userDao.streamRange(part)) {
+                        return stream.collect(Collectors.toList()).stream();
+                    }
+                })
+                .collect(Collectors.toList());
+
+        // Then
+        assertEquals(30, users.size());
+        assertEquals("Range0", users.get(0).getName());
+        assertNotNull(users.get(0).getCreatedAt());
+        assertEquals(users.stream().map(User::getId).sorted().collect(Collectors.toList()),
+                users.stream().map(User::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testForEachUser_Empty() {
+        // When
+        AtomicInteger visited = new AtomicInteger();
+        userDao.forEachUser(user -> visited.incrementAndGet());
+
+        // Then
+        assertEquals(0, visited.get());
+    }
+
+    @Test
+    void testFindPage() {
+        // Given
+        userDao.saveAll(IntStream.range(0, 25)
+                .mapToObj(i -> User.builder().name("Page" + i).email("page" + i + "@test.com").age(30).build())
+                .collect(Collectors.toList()));
+
+        // When
+        List<Long> ids = new ArrayList<>();
+        List<User> page = userDao.findPage(null, 10);
+        while (!page.isEmpty()) {
+            page.forEach(user -> ids.add(user.getId()));
+            page = userDao.findPage(page.get(page.size() - 1).getId(), 10);
+        }
+
+        // Then
+        assertEquals(25, ids.size());
+        assertEquals(ids.stream().sorted().distinct().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void testFindSummaries() {
+        // Given
+        userDao.saveAll(IntStream.range(0, 5)
+                .mapToObj(i -> User.builder().name("Summary" + i).email("summary" + i + "@test.com").age(30).build())
+                .collect(Collectors.toList()));
+
+        // When
+        List<UserSummary> all = userDao.findAllSummaries();
+        List<UserSummary> page = userDao.findSummaryPage(all.get(1).id(), 2);
+
+        // Then
+        assertEquals(5, all.size());
+        assertEquals("Summary0", all.get(0).name());
+        assertEquals("summary0@test.com", all.get(0).email());
+        assertEquals(List.of(all.get(2), all.get(3)), page);
+    }
+
+    @Test
+    void testFindPageByCreatedAt() {
+        // Given: у части пользователей одинаковая дата создания
+        LocalDateTime sameTime = LocalDateTime.of(2024, 1, 1, 12, 0);
+        userDao.saveAll(IntStream.range(0, 7)
+                .mapToObj(i -> User.builder().name("Keyset" + i).email("keyset" + i + "@test.com").age(30).build())
+                .collect(Collectors.toList()));
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Transaction transaction = session.beginTransaction();
+            session.createQuery("UPDATE User SET createdAt = :createdAt WHERE email LIKE 'keyset%'")
+                    .setParameter("createdAt", sameTime)
+                    .executeUpdate();
+            transaction.commit();
+        }
+
+        // When
+        List<Long> ids = new ArrayList<>();
+        UserPage page = userDao.findPageByCreatedAt(null, 3);
+        ids.addAll(page.users().stream().map(User::getId).collect(Collectors.toList()));
+        while (page.hasNext()) {
+            page = userDao.findPageByCreatedAt(page.nextCursor(), 3);
+            ids.addAll(page.users().stream().map(User::getId).collect(Collectors.toList()));
+        }
+
+        // Then
+        assertEquals(7, ids.size());
+        assertEquals(7, ids.stream().distinct().count());
+        assertEquals(ids.stream().sorted(Comparator.reverseOrder()).collect(Collectors.toList()), ids);
+    }
+
     @Test
     void testUpdateUser() {
         // Given
@@ -153,6 +421,47 @@ class UserDaoIntegrationTest {
         assertEquals(35, updatedUser.getAge());
     }
 
+    @Test
+    void testUpdate_StaleVersionIsRejected() {
+        // Given: два независимых чтения одной записи
+        User saved = userDao.save(User.builder().name("Versioned").email("versioned@example.com").age(20).build());
+        User first = userDao.findById(saved.getId()).orElseThrow();
+        User second = userDao.findById(saved.getId()).orElseThrow();
+
+        // When
+        first.setAge(21);
+        userDao.update(first);
+        second.setName("Lost Update");
+
+        // Then
+        OptimisticLockConflictException conflict =
+                assertThrows(OptimisticLockConflictException.class, () -> userDao.update(second));
+        assertEquals(saved.getId(), conflict.getUserId());
+        User stored = userDao.findById(saved.getId()).orElseThrow();
+        assertEquals("Versioned", stored.getName());
+        assertEquals(21, stored.getAge());
+        assertEquals(1L, stored.getVersion());
+    }
+
+    @Test
+    void testBulkUpdates_IncrementVersion() {
+        // Given
+        User saved = userDao.save(User.builder().name("Bulk").email("bulk@example.com").age(20).build());
+        User read = userDao.findById(saved.getId()).orElseThrow();
+
+        // When
+        userDao.updateById(saved.getId(), null, null, 21);
+        userDao.updateAll(List.of(new UserUpdate(saved.getId(), "Bulk 2", null, null)));
+        User upserted = userDao.upsertByEmail(User.builder().name("Bulk 3").email("bulk@example.com").age(22).build());
+
+        // Then
+        assertEquals(3L, upserted.getVersion());
+        read.setAge(99);
+        assertThrows(OptimisticLockConflictException.class, () -> userDao.update(read));
+        upserted.setAge(23);
+        assertEquals(4L, userDao.update(upserted).getVersion());
+    }
+
     @Test
     void testDeleteUser() {
         // Given
@@ -171,6 +480,143 @@ class UserDaoIntegrationTest {
         assertFalse(foundUser.isPresent());
     }
 
+    @Test
+    void testUpdateById_OnlyGivenFields() {
+        // Given
+        User savedUser = userDao.save(User.builder().name("Partial").email("partial@example.com").age(30).build());
+
+        // When
+        int updated = userDao.updateById(savedUser.getId(), null, null, 31);
+
+        // Then
+        assertEquals(1, updated);
+        User reloaded = userDao.findById(savedUser.getId()).orElseThrow();
+        assertEquals("Partial", reloaded.getName());
+        assertEquals("partial@example.com", reloaded.getEmail());
+        assertEquals(31, reloaded.getAge());
+    }
+
+    @Test
+    void testUpdateById_NotFound() {
+        // When
+        int updated = userDao.updateById(999L, "Nobody", null, null);
+
+        // Then
+        assertEquals(0, updated);
+    }
+
+    @Test
+    void testUpdateAll() {
+        // Given
+        User first = userDao.save(User.builder().name("First").email("first@test.com").age(20).build());
+        User second = userDao.save(User.builder().name("Second").email("second@test.com").age(30).build());
+        userDao.findById(first.getId());
+
+        // When
+        int updated = userDao.updateAll(List.of(
+                new UserUpdate(first.getId(), null, null, 21),
+                new UserUpdate(second.getId(), "Second 2", null, null),
+                new UserUpdate(999_999L, "Ghost", null, null)));
+
+        // Then
+        assertEquals(2, updated);
+        User firstFound = userDao.findById(first.getId()).orElseThrow();
+        assertEquals("First", firstFound.getName());
+        assertEquals(21, firstFound.getAge());
+        assertEquals("Second 2", userDao.findById(second.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void testSearch_RanksExactAndPrefixMatchesFirst() {
+        // Given
+        userDao.saveAll(List.of(
+                User.builder().name("Anna Smith").email("anna.smith@example.com").age(30).build(),
+                User.builder().name("Joanna Brown").email("jbrown@example.com").age(31).build(),
+                User.builder().name("Annabel Lee").email("annabel@example.com").age(32).build(),
+                User.builder().name("Bob Stone").email("bob@example.com").age(33).build(),
+                User.builder().name("Percent 100%").email("percent@example.com").age(34).build()));
+
+        // When
+        List<UserSearchHit> hits = userDao.search("ANNA", 10);
+        List<UserSearchHit> exact = userDao.search("bob@example.com", 10);
+        List<UserSearchHit> literal = userDao.search("0%", 10);
+
+        // Then
+        assertEquals(List.of("Anna Smith", "Annabel Lee", "Joanna Brown"),
+                hits.stream().map(hit -> hit.user().getName()).toList());
+        assertTrue(hits.get(1).score() > hits.get(2).score());
+        assertEquals("Bob Stone", exact.get(0).user().getName());
+        assertTrue(exact.get(0).score() >= 3);
+        assertEquals(List.of("Percent 100%"), literal.stream().map(hit -> hit.user().getName()).toList());
+    }
+
+    @Test
+    void testAggregates_GroupByInDatabase() {
+        // Given: два пользователя 1 марта (один в последнюю секунду дня), один 3 марта
+        userDao.saveAll(List.of(
+                User.builder().name("Agg One").email("agg1@test.com").age(23).build(),
+                User.builder().name("Agg Two").email("agg2@test.com").age(29).build(),
+                User.builder().name("Agg Three").email("agg3@test.com").age(41).build(),
+                User.builder().name("Agg Four").email("agg4@test.com").build()));
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            Transaction transaction = session.beginTransaction();
+            session.createQuery("UPDATE User SET createdAt = :createdAt WHERE email IN ('agg1@test.com', 'agg4@test.com')")
+                    .setParameter("createdAt", LocalDateTime.of(2024, 3, 1, 0, 0))
+                    .executeUpdate();
+            session.createQuery("UPDATE User SET createdAt = :createdAt WHERE email = 'agg2@test.com'")
+                    .setParameter("createdAt", LocalDateTime.of(2024, 3, 1, 23, 59, 59))
+                    .executeUpdate();
+            session.createQuery("UPDATE User SET createdAt = :createdAt WHERE email = 'agg3@test.com'")
+                    .setParameter("createdAt", LocalDateTime.of(2024, 3, 3, 9, 30))
+                    .executeUpdate();
+            transaction.commit();
+        }
+        LocalDate march1 = LocalDate.of(2024, 3, 1);
+
+        // When
+        long count = userDao.count();
+        List<AgeBucket> buckets = userDao.countByAgeBucket(10);
+        List<DailySignups> signups = userDao.signupsPerDay(march1, march1.plusDays(2));
+
+        // Then
+        assertEquals(4, count);
+        assertEquals(List.of(new AgeBucket(20, 30, 2), new AgeBucket(40, 50, 1), new AgeBucket(null, null, 1)), buckets);
+        assertEquals(List.of(new DailySignups(march1, 3), new DailySignups(march1.plusDays(1), 0),
+                new DailySignups(march1.plusDays(2), 1)), signups);
+    }
+
+    @Test
+    void testDeleteById() {
+        // Given
+        User savedUser = userDao.save(User.builder().name("Delete Me").email("deleteme@example.com").age(40).build());
+
+        // When
+        int deleted = userDao.deleteById(savedUser.getId());
+        int deletedAgain = userDao.deleteById(savedUser.getId());
+
+        // Then
+        assertEquals(1, deleted);
+        assertEquals(0, deletedAgain);
+        assertFalse(userDao.findById(savedUser.getId()).isPresent());
+    }
+
+    @Test
+    void testTransactionTemplate_SharesSessionAndRollsBack() {
+        // Given
+        TransactionTemplate transactionTemplate = new TransactionTemplate();
+
+        // When
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(() -> {
+            userDao.save(User.builder().name("Uncommitted").email("uncommitted@example.com").age(20).build());
+            // Запись видна в той же единице работы еще до коммита
+            assertTrue(userDao.findByEmail("uncommitted@example.com").isPresent());
+            throw new IllegalStateException("Откат единицы работы");
+        }));
+
+        // Then
+        assertFalse(userDao.findByEmail("uncommitted@example.com").isPresent());
+    }
+
     @Test
     void testFindByEmail() {
         // Given
@@ -0,0 +1,159 @@
+package com.example.dao;
+
+import com.example.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindUserDaoTest {
+
+    @Mock
+    private UserDao delegate;
+
+    private WriteBehindUserDao writeBehindUserDao;
+
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        // Таймер сброса выключен на время теста: сбрасываем явно
+        writeBehindUserDao = new WriteBehindUserDao(delegate, 3, 10, Duration.ofHours(1));
+        testUser = User.builder()
+                .id(1L)
+                .name("Test User")
+                .email("test@example.com")
+                .age(25)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehindUserDao.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testUpdateById_CoalescedIntoOneBatchUpdate() {
+        // Given
+        writeBehindUserDao.updateById(1L, "First", null, null);
+        writeBehindUserDao.updateById(1L, null, null, 30);
+        writeBehindUserDao.updateById(1L, "Second", null, null);
+
+        // When
+        writeBehindUserDao.flush();
+
+        // Then
+        ArgumentCaptor<Collection<UserUpdate>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate, times(1)).updateAll(batch.capture());
+        assertEquals(List.of(new UserUpdate(1L, "Second", null, 30)), List.copyOf(batch.getValue()));
+        verify(delegate, never()).updateById(any(), any(), any(), any());
+        assertEquals(0, writeBehindUserDao.getPendingCount());
+    }
+
+    @Test
+    void testFindById_SeesPendingUpdate() {
+        // Given
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+        writeBehindUserDao.updateById(1L, null, null, 40);
+
+        // When
+        User found = writeBehindUserDao.findById(1L).orElseThrow();
+
+        // Then
+        assertEquals(40, found.getAge());
+        assertEquals("Test User", found.getName());
+        assertEquals(25, testUser.getAge());
+    }
+
+    @Test
+    void testUpdateById_EmailChangeWrittenThroughWithPendingFields() {
+        // Given
+        writeBehindUserDao.updateById(1L, "Pending", null, null);
+        when(delegate.updateById(1L, "Pending", "new@example.com", null)).thenReturn(1);
+
+        // When
+        int updated = writeBehindUserDao.updateById(1L, null, "new@example.com", null);
+
+        // Then
+        assertEquals(1, updated);
+        assertEquals(0, writeBehindUserDao.getPendingCount());
+    }
+
+    @Test
+    void testDeleteById_DropsPendingUpdate() {
+        // Given
+        writeBehindUserDao.updateById(1L, "Pending", null, null);
+        when(delegate.deleteById(1L)).thenReturn(1);
+
+        // When
+        writeBehindUserDao.deleteById(1L);
+        writeBehindUserDao.flush();
+
+        // Then
+        verify(delegate, never()).updateAll(anyCollection());
+    }
+
+    @Test
+    void testFlush_FailureKeepsUpdatesForRetry() {
+        // Given
+        writeBehindUserDao.updateById(1L, "Pending", null, null);
+        when(delegate.updateAll(anyCollection()))
+                .thenThrow(new RuntimeException("Ошибка пакетного обновления пользователей"))
+                .thenReturn(1);
+
+        // When
+        assertThrows(RuntimeException.class, () -> writeBehindUserDao.flush());
+
+        // Then
+        assertEquals(1, writeBehindUserDao.getPendingCount());
+        writeBehindUserDao.flush();
+        assertEquals(0, writeBehindUserDao.getPendingCount());
+        verify(delegate, times(2)).updateAll(anyCollection());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testUpdate_FailureKeepsPendingUpdate() {
+        // Given
+        writeBehindUserDao.updateById(1L, "Pending", null, null);
+        when(delegate.update(testUser)).thenThrow(new OptimisticLockConflictException(1L, 0L, null));
+
+        // When
+        assertThrows(OptimisticLockConflictException.class, () -> writeBehindUserDao.update(testUser));
+
+        // Then: правка не потеряна и уходит следующим сбросом
+        assertEquals(1, writeBehindUserDao.getPendingCount());
+        writeBehindUserDao.flush();
+        ArgumentCaptor<Collection<UserUpdate>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate).updateAll(batch.capture());
+        assertEquals(List.of(new UserUpdate(1L, "Pending", null, null)), List.copyOf(batch.getValue()));
+    }
+
+    @Test
+    void testUpdateById_AfterClose_IsRejected() {
+        // Given
+        writeBehindUserDao.close();
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> writeBehindUserDao.updateById(1L, "Late", null, null));
+        assertEquals(0, writeBehindUserDao.getPendingCount());
+        verify(delegate, never()).updateAll(anyCollection());
+    }
+}
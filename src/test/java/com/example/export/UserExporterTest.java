@@ -0,0 +1,106 @@
+package com.example.export;
+
+import com.example.dao.IdRange;
+import com.example.dao.UserDao;
+import com.example.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserExporterTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    @Mock
+    private UserDao userDao;
+
+    @TempDir
+    Path tempDir;
+
+    private UserExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        exporter = new UserExporter(userDao, 2, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testExportCsv_AllPartitionsInIdOrder() throws Exception {
+        // Given: id 1..100, каждая часть отдает пользователей своего диапазона
+        when(userDao.findIdRange()).thenReturn(Optional.of(new IdRange(1, 100)));
+        when(userDao.streamRange(any(IdRange.class))).thenAnswer(invocation -> {
+            IdRange range = invocation.getArgument(0);
+            return LongStream.rangeClosed(range.from(), range.to()).mapToObj(UserExporterTest::user);
+        });
+        Path target = tempDir.resolve("users.csv");
+
+        // When
+        ExportResult result = exporter.export(target, ExportFormat.CSV);
+
+        // Then
+        List<String> lines = Files.readAllLines(target);
+        assertEquals(100, result.rows());
+        assertEquals(101, lines.size());
+        assertEquals("id,name,email,age,created_at", lines.get(0));
+        assertEquals("1,User 1,user1@test.com,30,2024-01-01T12:00", lines.get(1));
+        assertEquals("100,User 100,user100@test.com,30,2024-01-01T12:00", lines.get(100));
+        verify(userDao, times(8)).streamRange(any(IdRange.class));
+        assertEquals(List.of(target), Files.list(tempDir).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testExportNdjson_EscapesSpecialCharacters() throws Exception {
+        // Given
+        User user = User.builder().id(7L).name("Quote \"q\"\nline").email("q@test.com").createdAt(CREATED_AT).build();
+        when(userDao.findIdRange()).thenReturn(Optional.of(new IdRange(7, 7)));
+        when(userDao.streamRange(new IdRange(7, 7))).thenReturn(Stream.of(user));
+        Path target = tempDir.resolve("users.ndjson");
+
+        // When
+        exporter.export(target, ExportFormat.NDJSON);
+
+        // Then
+        assertEquals(List.of("{\"id\":7,\"name\":\"Quote \\\"q\\\"\\u000aline\",\"email\":\"q@test.com\","
+                + "\"age\":null,\"createdAt\":\"2024-01-01T12:00\"}"), Files.readAllLines(target));
+    }
+
+    @Test
+    void testExport_FailedPartitionLeavesNoFiles() throws Exception {
+        // Given
+        when(userDao.findIdRange()).thenReturn(Optional.of(new IdRange(1, 10)));
+        when(userDao.streamRange(any(IdRange.class))).thenThrow(new RuntimeException("Ошибка потокового чтения пользователей"));
+        Path target = tempDir.resolve("users.csv");
+
+        // When & Then
+        assertThrows(RuntimeException.class, () -> exporter.export(target, ExportFormat.CSV));
+        assertEquals(0, Files.list(tempDir).count());
+    }
+
+    private static User user(long id) {
+        return User.builder()
+                .id(id)
+                .name("User " + id)
+                .email("user" + id + "@test.com")
+                .age(30)
+                .createdAt(CREATED_AT)
+                .build();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.importer;
+
+import com.example.dao.UserDao;
+import com.example.dao.UserLookup;
+import com.example.entity.User;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserImporterTest {
+
+    @Mock
+    private UserDao userDao;
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private Path rejects;
+    private Path checkpoint;
+
+    private final List<User> saved = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        source = tempDir.resolve("users.csv");
+        rejects = tempDir.resolve("users.rejects.csv");
+        checkpoint = tempDir.resolve("users.checkpoint");
+    }
+
+    @Test
+    void testImport_ValidRowsInChunksAndRejects() throws Exception {
+        // Given: колонки в другом порядке, поле с запятой и переводом строки, две некорректные строки
+        Files.writeString(source, "email,age,name\r\n"
+                + "a@test.com,25,\"Doe, John\nJr\"\n"
+                + "b@test.com,,Bob\n"
+                + "not-an-email,30,Bad\n"
+                + "c@test.com,abc,Carl\n"
+                + "d@test.com,40,Dan\n");
+        recordSaveAll();
+
+        // When
+        ImportResult result = new UserImporter(userDao, 2, 2).importCsv(source, rejects, checkpoint);
+
+        // Then
+        assertEquals(3, result.imported());
+        assertEquals(2, result.rejected());
+        assertEquals(Set.of("Doe, John\nJr", "Bob", "Dan"), saved.stream().map(User::getName).collect(Collectors.toSet()));
+        // Во второй пачке корректных строк нет - она не доходит до БД
+        verify(userDao, times(2)).saveAll(ArgumentMatchers.<Iterable<User>>any());
+        List<String> rejectLines = Files.readAllLines(rejects);
+        assertEquals(3, rejectLines.size());
+        assertTrue(rejectLines.get(1).startsWith("5,"));
+        assertTrue(rejectLines.get(2).startsWith("6,"));
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void testImport_ResumesAfterCommittedChunks() throws Exception {
+        // Given: пачки 0 и 1 загружены прошлым запуском
+        Files.writeString(source, "name,email,age\n" + IntStream.range(0, 5)
+                .mapToObj(i -> "User" + i + ",user" + i + "@test.com,20\n")
+                .collect(Collectors.joining()));
+        Files.writeString(checkpoint, "chunk-size 2\n0\n1\n");
+        recordSaveAll();
+
+        // When
+        ImportResult result = new UserImporter(userDao, 1, 2).importCsv(source, rejects, checkpoint);
+
+        // Then
+        assertEquals(1, result.imported());
+        assertEquals(2, result.skippedChunks());
+        assertEquals("User4", saved.get(0).getName());
+    }
+
+    @Test
+    void testImport_DuplicateEmailRejectedRowByRow() throws Exception {
+        // Given
+        Files.writeString(source, "name,email,age\nAnn,ann@test.com,20\nAnn 2,ann@test.com,21\n");
+        when(userDao.saveAll(ArgumentMatchers.<Iterable<User>>any())).thenThrow(duplicateEmail());
+        when(userDao.findAllByEmails(List.of("ann@test.com", "ann@test.com")))
+                .thenReturn(new UserLookup<>(List.of(), List.of("ann@test.com")));
+        when(userDao.save(any(User.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenThrow(duplicateEmail());
+
+        // When
+        ImportResult result = new UserImporter(userDao, 1, 10).importCsv(source, rejects, checkpoint);
+
+        // Then
+        assertEquals(1, result.imported());
+        assertEquals(1, result.rejected());
+        assertTrue(Files.readAllLines(rejects).get(1).startsWith("3,"));
+    }
+
+    @Test
+    void testImport_ReplayOfCommittedChunkIsNotRejected() throws Exception {
+        // Given: прошлый запуск закоммитил пачку 0, но упал до записи ее номера в контрольную точку
+        Files.writeString(source, "name,email,age\nAnn,ann@test.com,20\nBob,bob@test.com,\nCarl,carl@test.com,30\n");
+        Files.writeString(checkpoint, "chunk-size 10\n");
+        when(userDao.saveAll(ArgumentMatchers.<Iterable<User>>any())).thenThrow(duplicateEmail());
+        when(userDao.findAllByEmails(List.of("ann@test.com", "bob@test.com", "carl@test.com"))).thenReturn(new UserLookup<>(
+                List.of(User.builder().id(1L).name("Ann").email("ann@test.com").age(20).build(),
+                        User.builder().id(2L).name("Bob").email("bob@test.com").build(),
+                        User.builder().id(3L).name("Other Carl").email("carl@test.com").age(30).build()),
+                List.of()));
+        when(userDao.save(any(User.class))).thenThrow(duplicateEmail());
+
+        // When
+        ImportResult result = new UserImporter(userDao, 1, 10).importCsv(source, rejects, checkpoint);
+
+        // Then: строки с теми же данными считаются загруженными, отклонен только настоящий дубликат
+        assertEquals(2, result.imported());
+        assertEquals(1, result.rejected());
+        verify(userDao, times(1)).save(any(User.class));
+        List<String> rejectLines = Files.readAllLines(rejects);
+        assertEquals(2, rejectLines.size());
+        assertTrue(rejectLines.get(1).startsWith("4,"));
+    }
+
+    @Test
+    void testImport_DatabaseFailureKeepsCheckpoint() throws Exception {
+        // Given
+        Files.writeString(source, "name,email,age\nAnn,ann@test.com,20\n");
+        when(userDao.saveAll(ArgumentMatchers.<Iterable<User>>any())).thenThrow(new RuntimeException("Ошибка пакетного сохранения пользователей"));
+
+        // When & Then
+        assertThrows(RuntimeException.class, () -> new UserImporter(userDao, 1, 10).importCsv(source, rejects, checkpoint));
+        assertEquals(List.of("chunk-size 10"), Files.readAllLines(checkpoint));
+        verify(userDao, never()).save(any(User.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordSaveAll() {
+        when(userDao.saveAll(ArgumentMatchers.<Iterable<User>>any())).thenAnswer(invocation -> {
+            long count = 0;
+            for (User user : (Iterable<User>) invocation.getArgument(0)) {
+                saved.add(user);
+                count++;
+            }
+            return count;
+        });
+    }
+
+    private static RuntimeException duplicateEmail() {
+        return new RuntimeException("Ошибка сохранения пользователя",
+                new ConstraintViolationException("duplicate key", new SQLException("duplicate key", "23505"), "users_email_key"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.service;
+
+import com.example.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncUserServiceTest {
+
+    private static final int MAX_CONCURRENCY = 3;
+
+    @Mock
+    private UserService userService;
+
+    private AsyncUserService asyncUserService;
+
+    @BeforeEach
+    void setUp() {
+        // Пул больше лимита, чтобы ограничение обеспечивал именно семафор
+        asyncUserService = new AsyncUserService(userService, Executors.newCachedThreadPool(), MAX_CONCURRENCY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncUserService.close();
+    }
+
+    @Test
+    void testGetUserById() {
+        // Given
+        User user = User.builder().id(1L).name("Async").email("async@example.com").age(20).build();
+        when(userService.getUserById(1L)).thenReturn(Optional.of(user));
+
+        // When
+        Optional<User> result = asyncUserService.getUserById(1L).join();
+
+        // Then
+        assertEquals(Optional.of(user), result);
+        verify(userService, times(1)).getUserById(1L);
+    }
+
+    @Test
+    void testCreateUser_ErrorCompletesExceptionally() {
+        // Given
+        when(userService.createUser("Dup", "dup@example.com", 30))
+                .thenThrow(new RuntimeException("Пользователь с таким email уже существует"));
+
+        // When
+        CompletableFuture<User> result = asyncUserService.createUser("Dup", "dup@example.com", 30);
+
+        // Then
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertEquals("Пользователь с таким email уже существует", exception.getCause().getMessage());
+    }
+
+    @Test
+    void testAfterClose_FutureFailsWithRejection() {
+        // Given
+        asyncUserService.close();
+
+        // When
+        CompletableFuture<Optional<User>> result = asyncUserService.getUserById(1L);
+
+        // Then
+        CompletionException exception = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        verify(userService, never()).getUserById(anyLong());
+    }
+
+    @Test
+    void testConcurrencyIsBoundedByPermits() {
+        // Given
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(userService.getUserById(anyLong())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return Optional.empty();
+        });
+
+        // When
+        List<CompletableFuture<Optional<User>>> results = new ArrayList<>();
+        for (long id = 0; id < 30; id++) {
+            results.add(asyncUserService.getUserById(id));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+
+        // Then
+        assertTrue(maxInFlight.get() <= MAX_CONCURRENCY, "одновременно выполнялось " + maxInFlight.get());
+        verify(userService, times(30)).getUserById(anyLong());
+    }
+}
@@ -1,7 +1,13 @@
 package com.example.service;
 
+import com.example.dao.DailySignups;
+import com.example.dao.OptimisticLockConflictException;
 import com.example.dao.UserDao;
+import com.example.dao.UserLookup;
+import com.example.dao.UserSearchHit;
+import com.example.dao.UserSummary;
 import com.example.entity.User;
+import com.example.util.TransactionTemplate;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,13 +15,18 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -26,6 +37,9 @@ class UserServiceUnitTest {
     @Mock
     private UserDao userDao;
 
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
     @InjectMocks
     private UserService userService;
 
@@ -45,6 +59,7 @@ class UserServiceUnitTest {
     @Test
     void testCreateUser_Success() {
         // Given
+        executeInPlace();
         when(userDao.findByEmail(anyString())).thenReturn(Optional.empty());
         when(userDao.save(any(User.class))).thenReturn(testUser);
 
@@ -59,11 +74,13 @@ class UserServiceUnitTest {
 
         verify(userDao, times(1)).findByEmail("test@example.com");
         verify(userDao, times(1)).save(any(User.class));
+        verify(transactionTemplate, times(1)).execute(any());
     }
 
     @Test
     void testCreateUser_EmailAlreadyExists() {
         // Given
+        executeInPlace();
         when(userDao.findByEmail("existing@example.com")).thenReturn(Optional.of(testUser));
 
         // When & Then
@@ -76,6 +93,38 @@ class UserServiceUnitTest {
         verify(userDao, never()).save(any(User.class));
     }
 
+    @Test
+    void testUpsertUser() {
+        // Given
+        when(userDao.upsertByEmail(any(User.class))).thenReturn(testUser);
+
+        // When
+        User result = userService.upsertUser("Test User", "test@example.com", 25);
+
+        // Then
+        assertEquals(testUser, result);
+        verify(userDao, never()).findByEmail(anyString());
+        verify(userDao, never()).save(any(User.class));
+    }
+
+    @Test
+    void testCreateUsers() {
+        // Given
+        List<User> users = Arrays.asList(
+                User.builder().name("User1").email("user1@test.com").age(20).build(),
+                User.builder().name("User2").email("user2@test.com").age(25).build()
+        );
+        when(userDao.saveAll(users)).thenReturn(2L);
+
+        // When
+        long created = userService.createUsers(users);
+
+        // Then
+        assertEquals(2L, created);
+        verify(userDao, times(1)).saveAll(users);
+        verify(userDao, never()).save(any(User.class));
+    }
+
     @Test
     void testGetUserById_Success() {
         // Given
@@ -103,6 +152,21 @@ class UserServiceUnitTest {
         verify(userDao, times(1)).findById(999L);
     }
 
+    @Test
+    void testGetUsersByIds() {
+        // Given
+        List<Long> ids = List.of(1L, 2L);
+        when(userDao.findAllByIds(ids)).thenReturn(new UserLookup<>(List.of(testUser), List.of(2L)));
+
+        // When
+        UserLookup<Long> lookup = userService.getUsersByIds(ids);
+
+        // Then
+        assertEquals(List.of(testUser), lookup.found());
+        assertEquals(List.of(2L), lookup.missing());
+        verify(userDao, never()).findById(anyLong());
+    }
+
     @Test
     void testGetAllUsers() {
         // Given
@@ -120,6 +184,106 @@ class UserServiceUnitTest {
         verify(userDao, times(1)).findAll();
     }
 
+    @Test
+    void testForEachUser() {
+        // Given
+        doAnswer(invocation -> {
+            Consumer<User> action = invocation.getArgument(0);
+            action.accept(testUser);
+            return null;
+        }).when(userDao).forEachUser(any());
+        List<User> visited = new ArrayList<>();
+
+        // When
+        userService.forEachUser(visited::add);
+
+        // Then
+        assertEquals(List.of(testUser), visited);
+        verify(userDao, never()).findAll();
+    }
+
+    @Test
+    void testGetUsersPage() {
+        // Given
+        when(userDao.findPage(1L, 10)).thenReturn(List.of(testUser));
+
+        // When
+        List<User> page = userService.getUsersPage(1L, 10);
+
+        // Then
+        assertEquals(1, page.size());
+        verify(userDao, times(1)).findPage(1L, 10);
+    }
+
+    @Test
+    void testGetUserSummariesPage() {
+        // Given
+        UserSummary summary = new UserSummary(1L, "Test User", "test@example.com");
+        when(userDao.findSummaryPage(null, 10)).thenReturn(List.of(summary));
+
+        // When
+        List<UserSummary> page = userService.getUserSummariesPage(null, 10);
+
+        // Then
+        assertEquals(List.of(summary), page);
+        verify(userDao, never()).findPage(any(), anyInt());
+    }
+
+    @Test
+    void testGetUsersPage_InvalidLimit() {
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> userService.getUsersPage(null, 0));
+        assertThrows(IllegalArgumentException.class, () -> userService.getUsersPageByCreatedAt(null, 100_000));
+        assertThrows(IllegalArgumentException.class, () -> userService.getUserSummariesPage(null, -1));
+        verifyNoInteractions(userDao);
+    }
+
+    @Test
+    void testSearchUsers_TooShortQuery() {
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> userService.searchUsers(" ab ", 10));
+        assertThrows(IllegalArgumentException.class, () -> userService.searchUsers(null, 10));
+        verifyNoInteractions(userDao);
+    }
+
+    @Test
+    void testSearchUsers_DelegatesToDao() {
+        // Given
+        UserSearchHit hit = new UserSearchHit(testUser, 2.5);
+        when(userDao.search("test", 10)).thenReturn(List.of(hit));
+
+        // When
+        List<UserSearchHit> hits = userService.searchUsers("test", 10);
+
+        // Then
+        assertEquals(List.of(hit), hits);
+    }
+
+    @Test
+    void testGetSignupsPerDay_DelegatesToDao() {
+        // Given
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        List<DailySignups> signups = List.of(new DailySignups(day, 5), new DailySignups(day.plusDays(1), 0));
+        when(userDao.signupsPerDay(day, day.plusDays(1))).thenReturn(signups);
+
+        // When
+        List<DailySignups> result = userService.getSignupsPerDay(day, day.plusDays(1));
+
+        // Then
+        assertEquals(signups, result);
+    }
+
+    @Test
+    void testGetSignupsPerDay_InvalidPeriod() {
+        // Given
+        LocalDate day = LocalDate.of(2024, 3, 1);
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> userService.getSignupsPerDay(day, day.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> userService.getSignupsPerDay(day, day.plusYears(2)));
+        verifyNoInteractions(userDao);
+    }
+
     @Test
     void testUpdateUser_Success() {
         // Given
@@ -138,6 +302,20 @@ class UserServiceUnitTest {
         verify(userDao, times(1)).update(any(User.class));
     }
 
+    @Test
+    void testUpdateUser_NullAgeClearsAge() {
+        // Given
+        when(userDao.findById(1L)).thenReturn(Optional.of(testUser));
+        when(userDao.update(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        User updatedUser = userService.updateUser(1L, "Test User", "test@example.com", null);
+
+        // Then
+        assertNull(updatedUser.getAge());
+        verify(userDao, never()).updateById(anyLong(), any(), any(), any());
+    }
+
     @Test
     void testUpdateUser_NotFound() {
         // Given
@@ -153,15 +331,92 @@ class UserServiceUnitTest {
         verify(userDao, never()).update(any(User.class));
     }
 
+    @Test
+    void testPatchUser_SingleStatement() {
+        // Given
+        when(userDao.updateById(1L, "Updated Name", null, null)).thenReturn(1);
+
+        // When
+        userService.patchUser(1L, "Updated Name", null, null);
+
+        // Then
+        verify(userDao, times(1)).updateById(1L, "Updated Name", null, null);
+        verify(userDao, never()).findById(anyLong());
+        verify(userDao, never()).update(any(User.class));
+    }
+
+    @Test
+    void testPatchUser_NotFound() {
+        // Given
+        when(userDao.updateById(999L, "New Name", null, null)).thenReturn(0);
+
+        // When & Then
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            userService.patchUser(999L, "New Name", null, null);
+        });
+
+        assertEquals("Пользователь не найден", exception.getMessage());
+    }
+
+    @Test
+    void testModifyUser_RetriesWithFreshReadOnConflict() {
+        // Given
+        User stale = User.builder().id(1L).name("Test User").email("test@example.com").age(25).version(3L).build();
+        User fresh = User.builder().id(1L).name("Test User").email("test@example.com").age(26).version(4L).build();
+        when(userDao.findById(1L)).thenReturn(Optional.of(stale)).thenReturn(Optional.of(fresh));
+        when(userDao.update(stale)).thenThrow(new OptimisticLockConflictException(1L, 3L, null));
+        when(userDao.update(fresh)).thenReturn(fresh);
+
+        // When
+        User updated = userService.modifyUser(1L, user -> user.setAge(user.getAge() + 1));
+
+        // Then
+        assertSame(fresh, updated);
+        assertEquals(27, updated.getAge());
+        verify(userDao, times(2)).findById(1L);
+    }
+
+    @Test
+    void testModifyUser_GivesUpAfterMaxAttempts() {
+        // Given
+        when(userDao.findById(1L)).thenReturn(Optional.of(testUser));
+        when(userDao.update(testUser)).thenThrow(new OptimisticLockConflictException(1L, 0L, null));
+
+        // When & Then
+        assertThrows(OptimisticLockConflictException.class, () -> userService.modifyUser(1L, user -> user.setName("New")));
+        verify(userDao, times(5)).update(testUser);
+    }
+
     @Test
     void testDeleteUser() {
         // Given
-        doNothing().when(userDao).delete(1L);
+        when(userDao.deleteById(1L)).thenReturn(1);
 
         // When
-        userService.deleteUser(1L);
+        boolean deleted = userService.deleteUser(1L);
 
         // Then
-        verify(userDao, times(1)).delete(1L);
+        assertTrue(deleted);
+        verify(userDao, times(1)).deleteById(1L);
+        verify(userDao, never()).findById(anyLong());
+    }
+
+    @Test
+    void testDeleteUser_NotFound() {
+        // Given
+        when(userDao.deleteById(999L)).thenReturn(0);
+
+        // When
+        boolean deleted = userService.deleteUser(999L);
+
+        // Then
+        assertFalse(deleted);
+    }
+
+    // Единица работы выполняется сразу, без Hibernate
+    @SuppressWarnings("unchecked")
+    private void executeInPlace() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((Supplier<Object>) invocation.getArgument(0)).get());
     }
 }
\ No newline at end of file
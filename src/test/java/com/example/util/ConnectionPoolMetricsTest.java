@@ -0,0 +1,45 @@
+package com.example.util;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolMetricsTest {
+
+    @Test
+    void testTrackerRecordsIntoPoolMetrics() {
+        // Given
+        PoolStats poolStats = new PoolStats(0) {
+            @Override
+            protected void update() {
+                totalConnections = 10;
+                activeConnections = 4;
+                idleConnections = 6;
+                pendingThreads = 2;
+            }
+        };
+        IMetricsTracker tracker = new PoolMetricsTrackerFactory().create("test-pool", poolStats);
+
+        // When
+        tracker.recordConnectionAcquiredNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        tracker.recordConnectionAcquiredNanos(TimeUnit.MICROSECONDS.toNanos(300));
+        tracker.recordConnectionUsageMillis(8);
+        tracker.recordConnectionUsageMillis(12);
+        tracker.recordConnectionTimeout();
+
+        // Then
+        ConnectionPoolMetrics.Snapshot snapshot = ConnectionPoolMetrics.forPool("test-pool").snapshot();
+        assertEquals(4, snapshot.activeConnections());
+        assertEquals(6, snapshot.idleConnections());
+        assertEquals(2, snapshot.threadsAwaitingConnection());
+        assertEquals(2, snapshot.acquisitions());
+        assertEquals(200, snapshot.averageAcquireMicros());
+        assertEquals(300, snapshot.maxAcquireMicros());
+        assertEquals(10, snapshot.averageUsageMillis());
+        assertEquals(1, snapshot.connectionTimeouts());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.util;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HibernateUtilConcurrencyTest {
+
+    private static final int THREADS = 200;
+    private static final int CALLS_PER_THREAD = 10_000;
+
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        // Простая заглушка вместо Mockito: мок записывает каждый вызов и сам стал бы точкой синхронизации
+        sessionFactory = (SessionFactory) Proxy.newProxyInstance(
+                SessionFactory.class.getClassLoader(),
+                new Class<?>[]{SessionFactory.class},
+                (proxy, method, args) -> method.getReturnType() == boolean.class ? false : null);
+        HibernateUtil.setSessionFactory(sessionFactory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HibernateUtil.resetSessionFactory();
+    }
+
+    @Test
+    void testGetSessionFactory_DoesNotBlockOnClassMonitor() throws Exception {
+        // Given: другой поток держит монитор HibernateUtil
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (HibernateUtil.class) {
+                locked.countDown();
+                awaitQuietly(release);
+            }
+        });
+        holder.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // When
+            Future<SessionFactory> result = executor.submit(HibernateUtil::getSessionFactory);
+
+            // Then: готовая фабрика возвращается, не дожидаясь освобождения монитора
+            assertSame(sessionFactory, result.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            holder.join();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testGetSessionFactory_ConcurrentReaders() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int call = 0; call < CALLS_PER_THREAD; call++) {
+                        if (HibernateUtil.getSessionFactory() != sessionFactory) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+
+            // When
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                // Then: все потоки получают одну и ту же фабрику
+                assertTrue(result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.util;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaRouterTest {
+
+    private final SessionFactory primary = stubFactory();
+    private final SessionFactory replica1 = stubFactory();
+    private final SessionFactory replica2 = stubFactory();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testRoute_WithoutReplicas_UsesPrimary() {
+        // Given
+        ReplicaRouter router = router(List.of(), ReplicaRouter.Policy.ROUND_ROBIN, Map.of());
+
+        // When
+        SessionFactory routed = router.route();
+
+        // Then
+        assertSame(primary, routed);
+    }
+
+    @Test
+    void testRoute_RoundRobin_AlternatesReplicas() {
+        // Given
+        ReplicaRouter router = router(List.of(replica1, replica2), ReplicaRouter.Policy.ROUND_ROBIN, Map.of());
+
+        // When
+        List<SessionFactory> routed = List.of(router.route(), router.route(), router.route(), router.route());
+
+        // Then
+        assertEquals(List.of(replica1, replica2, replica1, replica2), routed);
+    }
+
+    @Test
+    void testRoute_LeastLoaded_PicksReplicaWithFewestActiveConnections() {
+        // Given
+        ReplicaRouter router = router(List.of(replica1, replica2), ReplicaRouter.Policy.LEAST_LOADED,
+                Map.of(replica1, 7, replica2, 2));
+
+        // When & Then
+        for (int i = 0; i < 4; i++) {
+            assertSame(replica2, router.route());
+        }
+    }
+
+    @Test
+    void testRoute_AfterWrite_UsesPrimaryWithinWindow() {
+        // Given
+        ReplicaRouter router = router(List.of(replica1), ReplicaRouter.Policy.ROUND_ROBIN, Map.of());
+        router.recordWrite();
+
+        // When
+        clock.addAndGet(Duration.ofMillis(999).toNanos());
+        SessionFactory withinWindow = router.route();
+        clock.addAndGet(Duration.ofMillis(1).toNanos());
+        SessionFactory afterWindow = router.route();
+
+        // Then
+        assertSame(primary, withinWindow);
+        assertSame(replica1, afterWindow);
+    }
+
+    @Test
+    void testRoute_WriteInOtherThread_DoesNotPinReads() throws Exception {
+        // Given
+        ReplicaRouter router = router(List.of(replica1), ReplicaRouter.Policy.ROUND_ROBIN, Map.of());
+        Thread writer = new Thread(router::recordWrite);
+        writer.start();
+        writer.join();
+
+        // When
+        SessionFactory routed = router.route();
+
+        // Then
+        assertSame(replica1, routed);
+    }
+
+    @Test
+    void testRoute_LastWriteRestoredInOtherThread_UsesPrimary() throws Exception {
+        // Given: запись в одном потоке, ее окно передано в другой
+        ReplicaRouter router = router(List.of(replica1), ReplicaRouter.Policy.ROUND_ROBIN, Map.of());
+        AtomicReference<Long> writtenAt = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            router.recordWrite();
+            writtenAt.set(router.lastWrite());
+        });
+        writer.start();
+        writer.join();
+
+        // When
+        router.restoreLastWrite(writtenAt.get());
+        SessionFactory restored = router.route();
+        router.restoreLastWrite(null);
+        SessionFactory cleared = router.route();
+
+        // Then
+        assertSame(primary, restored);
+        assertSame(replica1, cleared);
+    }
+
+    @Test
+    void testParsePolicy_AcceptsConfigurationSpelling() {
+        assertEquals(ReplicaRouter.Policy.ROUND_ROBIN, ReplicaRouter.Policy.parse("round-robin"));
+        assertEquals(ReplicaRouter.Policy.LEAST_LOADED, ReplicaRouter.Policy.parse(" Least_Loaded "));
+    }
+
+    private ReplicaRouter router(List<SessionFactory> replicas, ReplicaRouter.Policy policy,
+                                 Map<SessionFactory, Integer> activeConnections) {
+        return new ReplicaRouter(() -> primary, replicas, policy, Duration.ofSeconds(1),
+                factory -> activeConnections.getOrDefault(factory, 0), clock::get);
+    }
+
+    private static SessionFactory stubFactory() {
+        return (SessionFactory) Proxy.newProxyInstance(
+                SessionFactory.class.getClassLoader(),
+                new Class<?>[]{SessionFactory.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.util;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TransactionTemplateTest {
+
+    @Test
+    void testExecute_NestedOtherFactory_KeepsOuterActive() {
+        // Given
+        SessionFactory outer = factory();
+        SessionFactory inner = factory();
+
+        // When
+        boolean[] seen = new boolean[3];
+        new TransactionTemplate(() -> outer).executeWithoutResult(() -> {
+            new TransactionTemplate(() -> inner).executeWithoutResult(() -> seen[0] = TransactionTemplate.isActive(outer)
+                    && TransactionTemplate.isActive(inner));
+            seen[1] = TransactionTemplate.isActive(outer);
+            seen[2] = TransactionTemplate.isActive(inner);
+        });
+
+        // Then
+        assertTrue(seen[0]);
+        assertTrue(seen[1]);
+        assertFalse(seen[2]);
+        assertFalse(TransactionTemplate.isActive(outer));
+    }
+
+    @Test
+    void testNone_RunsWorkWithoutTransaction() {
+        // When
+        String result = TransactionTemplate.none().execute(() -> "done");
+
+        // Then
+        assertEquals("done", result);
+    }
+
+    @Test
+    void testAfterCommit_InsideUnitOfWork_RunsOnlyOnCommit() {
+        // Given
+        SessionFactory factory = factory();
+        Transaction transaction = factory.getCurrentSession().beginTransaction();
+        TransactionTemplate template = new TransactionTemplate(() -> factory);
+        AtomicInteger runs = new AtomicInteger();
+
+        // When
+        template.executeWithoutResult(() -> template.afterCommit(runs::incrementAndGet));
+
+        // Then: до завершения транзакции действие не выполняется, при откате - тоже
+        assertEquals(0, runs.get());
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        verify(transaction).registerSynchronization(synchronization.capture());
+        synchronization.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertEquals(0, runs.get());
+        synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testAfterCommit_OutsideUnitOfWork_RunsImmediately() {
+        // Given
+        AtomicInteger runs = new AtomicInteger();
+
+        // When
+        new TransactionTemplate(TransactionTemplateTest::factory).afterCommit(runs::incrementAndGet);
+        TransactionTemplate.none().afterCommit(runs::incrementAndGet);
+
+        // Then
+        assertEquals(2, runs.get());
+    }
+
+    private static SessionFactory factory() {
+        SessionFactory factory = mock(SessionFactory.class);
+        Session session = mock(Session.class);
+        Transaction transaction = mock(Transaction.class);
+        when(factory.getCurrentSession()).thenReturn(session);
+        when(session.beginTransaction()).thenReturn(transaction);
+        when(session.getTransaction()).thenReturn(transaction);
+        lenient().when(transaction.getStatus()).thenReturn(TransactionStatus.ACTIVE);
+        return factory;
+    }
+}